@@ -4,6 +4,9 @@ import java.nio.BufferUnderflowException;
 
 /**
  * Implements a binary heap.
+ * The root is at index 1, so the children of i are the pair 2i and 2i + 1:
+ * an aligned block of two references that never straddles a cache line,
+ * and deleteMin picks between them with one comparison per level.
  * Note that all "matching" is based on the compareTo method.
  * Created by Fanliyan on 2017/5/28.
  */
@@ -56,6 +59,29 @@ public class BinaryHeap<AnyType extends Comparable<? super AnyType>> {
             array[hole] = array[hole / 2];
         }
         array[hole] = x;
+        array[0] = null;    // Do not keep the sentinel reachable
+    }
+
+    /**
+     * Insert many items at once. If they are at least as many as the items
+     * already present, the heap is rebuilt with buildHeap in linear time
+     * rather than percolating each one up.
+     * Duplicates are allowed.
+     * @param items the items to insert.
+     */
+    public void insertAll(AnyType[] items){
+        if(items.length < currentSize){
+            for(AnyType item: items){
+                insert(item);
+            }
+            return;
+        }
+        if(currentSize + items.length >= array.length){
+            enlargeArray(currentSize + items.length + 1);
+        }
+        System.arraycopy(items, 0, array, currentSize + 1, items.length);
+        currentSize += items.length;
+        buildHeap();
     }
 
     private void enlargeArray(int newSize){
@@ -79,6 +105,11 @@ public class BinaryHeap<AnyType extends Comparable<? super AnyType>> {
 
     /**
      * Remove the smallest item from the priority queue.
+     * Uses Floyd's bottom-up method: the hole left by the minimum is moved
+     * down to a leaf along the smaller children, one comparison per level,
+     * and the last item is then percolated up from there. The last item
+     * nearly always belongs near the bottom, so this takes about log N
+     * comparisons where percolateDown takes 2 log N.
      * @return the smallest item, or throw an UnderflowException if empty.
      */
     public AnyType deleteMin(){
@@ -86,8 +117,27 @@ public class BinaryHeap<AnyType extends Comparable<? super AnyType>> {
             throw new BufferUnderflowException();
         }
         AnyType minItem = findMin();
-        array[1] = array[currentSize--];
-        percolateDown(1);
+        AnyType last = array[currentSize];
+        array[currentSize--] = null;
+        if(currentSize > 0){
+            int hole = 1;
+            int child = 2;
+            for( ; child < currentSize; child = hole * 2){
+                if(array[child + 1].compareTo(array[child]) < 0){
+                    child++;
+                }
+                array[hole] = array[child];
+                hole = child;
+            }
+            if(child == currentSize){
+                array[hole] = array[child];
+                hole = child;
+            }
+            for( ; hole > 1 && last.compareTo(array[hole / 2]) < 0; hole /= 2){
+                array[hole] = array[hole / 2];
+            }
+            array[hole] = last;
+        }
         return minItem;
     }
 
@@ -114,6 +164,9 @@ public class BinaryHeap<AnyType extends Comparable<? super AnyType>> {
      * Make the priority queue logically empty.
      */
     public void makeEmpty(){
+        for(int i = 1; i <= currentSize; i++){
+            array[i] = null;
+        }
         currentSize = 0;
     }
 
@@ -150,5 +203,71 @@ public class BinaryHeap<AnyType extends Comparable<? super AnyType>> {
                 System.out.println("Oops! " + i);
             }
         }
+        Integer[] batch = new Integer[numItems];
+        for(i = 0; i < numItems; i++){
+            batch[i] = (i * 37) % numItems;
+        }
+        h.insert(-1);
+        h.insertAll(batch);
+        h.insertAll(new Integer[]{ numItems + 1, numItems });
+        for(i = -1; i <= numItems + 1; i++){
+            if(h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+
+        // Comparisons and time per deleteMin, filling by insert and by insertAll
+        final int N = 1_000_000;
+        java.util.Random r = new java.util.Random(1);
+        Counted[] items = new Counted[N];
+        for(i = 0; i < N; i++){
+            items[i] = new Counted(r.nextInt());
+        }
+        for(int round = 0; round < 3; round++){
+            for(int bulk = 0; bulk < 2; bulk++){
+                BinaryHeap<Counted> c = new BinaryHeap<>();
+                long start = System.currentTimeMillis();
+                Counted.compares = 0;
+                if(bulk == 1){
+                    c.insertAll(items);
+                }else {
+                    for(Counted item: items){
+                        c.insert(item);
+                    }
+                }
+                long fillCompares = Counted.compares;
+                long middle = System.currentTimeMillis();
+                Counted.compares = 0;
+                int previous = Integer.MIN_VALUE;
+                while(!c.isEmpty()){
+                    int x = c.deleteMin().value;
+                    if(x < previous){
+                        System.out.println("Oops! out of order");
+                    }
+                    previous = x;
+                }
+                long end = System.currentTimeMillis();
+                System.out.println(N + " items, " + (bulk == 1 ? "insertAll" : "insert") + ": fill " + (middle - start)
+                        + "ms, " + (double) fillCompares / N + " compares/item; deleteMin " + (end - middle) + "ms, "
+                        + (double) Counted.compares / N + " compares/item (log N = " + (int) (Math.log(N) / Math.log(2)) + ")");
+            }
+        }
+    }
+
+    /**
+     * An int that counts its comparisons.
+     */
+    private static final class Counted implements Comparable<Counted> {
+        static long compares;
+        final int value;
+
+        Counted(int value){
+            this.value = value;
+        }
+
+        public int compareTo(Counted rhs){
+            compares++;
+            return Integer.compare(value, rhs.value);
+        }
     }
 }
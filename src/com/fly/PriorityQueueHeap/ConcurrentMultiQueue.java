@@ -0,0 +1,296 @@
+package com.fly.PriorityQueueHeap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe priority queue made of several BinaryHeaps, a MultiQueue.
+ * CONSTRUCTION: a mode and the expected number of threads, or defaults of
+ * RELAXED and the number of processors; there are QUEUES_PER_THREAD heaps
+ * per thread, each guarded by its own lock.
+ * insert puts the item into a random heap whose lock is free, so producers
+ * rarely meet. In RELAXED mode deleteMin looks at the cached minimum of two
+ * random heaps and takes from the smaller: the item returned is not always
+ * the global minimum, but its expected rank is O(number of heaps), and no
+ * lock is ever waited for. In STRICT mode deleteMin locks every heap in
+ * order and takes the true minimum, so it is linearizable but consumers
+ * are serialized, and inserts wait while one runs.
+ * Note that all "matching" is based on the compareTo method.
+ */
+public class ConcurrentMultiQueue<AnyType extends Comparable<? super AnyType>> {
+
+    public enum Mode { STRICT, RELAXED }
+
+    private static final int QUEUES_PER_THREAD = 2;
+    private static final int INSERT_ATTEMPTS = 8;  // Free locks tried before waiting on one
+
+    private final Mode mode;
+    private final Queue<AnyType>[] queues;
+    private final LongAdder currentSize = new LongAdder();
+
+    /**
+     * Construct a relaxed queue for as many threads as processors.
+     */
+    public ConcurrentMultiQueue(){
+        this(Mode.RELAXED);
+    }
+
+    /**
+     * Construct the queue for as many threads as processors.
+     * @param mode STRICT or RELAXED deleteMin.
+     */
+    public ConcurrentMultiQueue(Mode mode){
+        this(mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construct the queue.
+     * @param mode STRICT or RELAXED deleteMin.
+     * @param concurrencyLevel the expected number of concurrent threads.
+     */
+    public ConcurrentMultiQueue(Mode mode, int concurrencyLevel){
+        this.mode = mode;
+        queues = new Queue[Math.max(2, QUEUES_PER_THREAD * concurrencyLevel)];
+        for(int i = 0; i < queues.length; i++){
+            queues[i] = new Queue<>();
+        }
+    }
+
+    /**
+     * One heap, its lock and a copy of its minimum that can be read without the lock.
+     */
+    private static final class Queue<AnyType extends Comparable<? super AnyType>> {
+        final ReentrantLock lock = new ReentrantLock();
+        final BinaryHeap<AnyType> heap = new BinaryHeap<>();
+        volatile AnyType top;   // heap.findMin(), or null if empty
+
+        void updateTop(){
+            top = heap.isEmpty() ? null : heap.findMin();
+        }
+    }
+
+    /**
+     * Insert into the priority queue. Duplicates are allowed.
+     * A few random heaps are tried without waiting; if all are busy, as
+     * when a STRICT deleteMin holds every lock, the thread blocks on one
+     * rather than spinning against the lock holder.
+     * @param x the item to insert.
+     */
+    public void insert(AnyType x){
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        Queue<AnyType> q = null;
+        for(int attempt = 0; q == null; attempt++){
+            Queue<AnyType> candidate = queues[r.nextInt(queues.length)];
+            if(attempt >= INSERT_ATTEMPTS){
+                candidate.lock.lock();
+                q = candidate;
+            }else if(candidate.lock.tryLock()){
+                q = candidate;
+            }
+        }
+        try {
+            q.heap.insert(x);
+            q.updateTop();
+        }finally {
+            q.lock.unlock();
+        }
+        currentSize.increment();
+    }
+
+    /**
+     * Remove a smallest item, exactly in STRICT mode and approximately in
+     * RELAXED mode.
+     * @return the item, or null if the queue was found empty.
+     */
+    public AnyType deleteMin(){
+        return mode == Mode.STRICT ? deleteMinStrict() : deleteMinRelaxed();
+    }
+
+    private AnyType deleteMinRelaxed(){
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for(int attempt = 0; ; attempt++){
+            Queue<AnyType> q = queues[r.nextInt(queues.length)];
+            Queue<AnyType> other = queues[r.nextInt(queues.length)];
+            AnyType a = q.top;
+            AnyType b = other.top;
+            if(a == null || (b != null && b.compareTo(a) < 0)){
+                q = other;
+            }
+            if(q.top == null){
+                // Two empty heaps; after a few tries, look at all of them
+                if(attempt > 2){
+                    q = smallestTop();
+                    if(q == null){
+                        return null;
+                    }
+                }else {
+                    continue;
+                }
+            }
+            if(q.lock.tryLock()){
+                try {
+                    if(!q.heap.isEmpty()){
+                        AnyType min = q.heap.deleteMin();
+                        q.updateTop();
+                        currentSize.decrement();
+                        return min;
+                    }
+                }finally {
+                    q.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the heap whose cached minimum is smallest, or null if every
+     *         heap is empty and the size says so too.
+     */
+    private Queue<AnyType> smallestTop(){
+        for( ; ; ){
+            Queue<AnyType> best = null;
+            AnyType bestTop = null;
+            for(Queue<AnyType> q: queues){
+                AnyType t = q.top;
+                if(t != null && (bestTop == null || t.compareTo(bestTop) < 0)){
+                    best = q;
+                    bestTop = t;
+                }
+            }
+            if(best != null || currentSize.sum() <= 0){
+                return best;
+            }
+            Thread.yield();     // A deleteMin has taken its item but not yet counted it
+        }
+    }
+
+    private AnyType deleteMinStrict(){
+        // Locks are always taken in index order, so strict consumers cannot deadlock
+        for(Queue<AnyType> q: queues){
+            q.lock.lock();
+        }
+        try {
+            Queue<AnyType> best = null;
+            for(Queue<AnyType> q: queues){
+                if(!q.heap.isEmpty() && (best == null || q.heap.findMin().compareTo(best.heap.findMin()) < 0)){
+                    best = q;
+                }
+            }
+            if(best == null){
+                return null;
+            }
+            AnyType min = best.heap.deleteMin();
+            best.updateTop();
+            currentSize.decrement();
+            return min;
+        }finally {
+            for(Queue<AnyType> q: queues){
+                q.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Test if the priority queue is logically empty.
+     * @return true if empty, false otherwise; only a hint while other threads run.
+     */
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of items; only a hint while other threads run.
+     */
+    public int size(){
+        return (int) Math.max(0, currentSize.sum());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int NUM_ITEMS = 100000;
+        System.out.println("Checking; no bad output is good");
+        for(Mode mode: Mode.values()){
+            ConcurrentMultiQueue<Integer> h = new ConcurrentMultiQueue<>(mode, 4);
+            int i;
+            for(i = 37; i != 0; i = (i + 37) % NUM_ITEMS){
+                h.insert(i);
+            }
+            long sum = 0;
+            long displacement = 0;
+            for(i = 1; i < NUM_ITEMS; i++){
+                Integer x = h.deleteMin();
+                if(mode == Mode.STRICT && x != i){
+                    System.out.println("Oops! " + i);
+                }
+                sum += x;
+                displacement += Math.abs(x - i);
+            }
+            if(h.deleteMin() != null || sum != (long) NUM_ITEMS * (NUM_ITEMS - 1) / 2){
+                System.out.println("Oops! items lost or duplicated in " + mode);
+            }
+            System.out.println(mode + ": mean distance from the true rank " + (double) displacement / (NUM_ITEMS - 1));
+        }
+
+        // Half inserts, half deleteMins, against one BinaryHeap behind a lock
+        final int OPS = 2_000_000;
+        final int PREFILL = 100_000;
+        System.out.println("Processors: " + Runtime.getRuntime().availableProcessors());
+        for(int threads = 1; threads <= 64; threads *= 2){
+            long[] times = new long[3];
+            for(int kind = 0; kind < 3; kind++){
+                final ConcurrentMultiQueue<Integer> multi = kind == 2 ? null
+                        : new ConcurrentMultiQueue<>(kind == 0 ? Mode.STRICT : Mode.RELAXED, threads);
+                final BinaryHeap<Integer> global = new BinaryHeap<>();
+                Op op = multi != null ? new Op(){
+                    public void apply(boolean insert, int x){
+                        if(insert){
+                            multi.insert(x);
+                        }else {
+                            multi.deleteMin();
+                        }
+                    }
+                } : new Op(){
+                    public void apply(boolean insert, int x){
+                        synchronized (global){
+                            if(insert){
+                                global.insert(x);
+                            }else if(!global.isEmpty()){
+                                global.deleteMin();
+                            }
+                        }
+                    }
+                };
+                for(int i = 0; i < PREFILL; i++){
+                    op.apply(true, i * 7919 % PREFILL);
+                }
+                times[kind] = runWorkers(threads, OPS / threads, op);
+            }
+            System.out.println(threads + " threads: strict " + OPS / Math.max(1, times[0]) + " ops/ms, relaxed "
+                    + OPS / Math.max(1, times[1]) + " ops/ms, global lock " + OPS / Math.max(1, times[2]) + " ops/ms");
+        }
+    }
+
+    private interface Op{
+        void apply(boolean insert, int x);
+    }
+
+    private static long runWorkers(int threads, final int ops, final Op op) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for(int i = 0; i < ops; i++){
+                    op.apply(r.nextBoolean(), r.nextInt(1 << 20));
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for(Thread w: workers){
+            w.start();
+        }
+        for(Thread w: workers){
+            w.join();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
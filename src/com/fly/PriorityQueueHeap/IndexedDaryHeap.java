@@ -0,0 +1,428 @@
+package com.fly.PriorityQueueHeap;
+
+import com.fly.PairingHeap;
+
+import java.nio.BufferUnderflowException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Implements an indexed d-ary heap.
+ * Every item is identified by an int handle in [0, capacity), chosen by
+ * the caller (a vertex number, a task id), and an int position map from
+ * handle to heap slot lets decreaseKey, increaseKey and remove find the
+ * item directly. Both maps are plain int arrays, so no object is
+ * allocated per item, unlike the PairNode of PairingHeap.
+ * A wider node makes the tree shallower: insert and decreaseKey, which
+ * percolate up, take log_d N steps, while deleteMin compares d children
+ * per level. d = 4 usually beats d = 2 when decreaseKey is frequent. The
+ * slot array is not laid out by cache line, and every comparison reads a
+ * key through keys[heap[c]], so a wider node saves levels, not misses.
+ * Note that all "matching" is based on the compareTo method.
+ */
+public class IndexedDaryHeap<AnyType extends Comparable<? super AnyType>> {
+
+    public static final int DEFAULT_ARITY = 4;
+
+    private final int d;            // Children per node
+    private int currentSize;        // Number of items in heap
+    private final int[] heap;       // heap[slot] is the handle in that slot; the root is slot 0
+    private final int[] position;   // position[handle] is its slot, or -1 if absent
+    private final AnyType[] keys;   // keys[handle] is its key
+
+    /**
+     * Construct the heap with the default arity.
+     * @param capacity handles range over [0, capacity).
+     */
+    public IndexedDaryHeap(int capacity){
+        this(capacity, DEFAULT_ARITY);
+    }
+
+    /**
+     * Construct the heap.
+     * @param capacity handles range over [0, capacity).
+     * @param d the number of children per node, at least 2.
+     */
+    public IndexedDaryHeap(int capacity, int d){
+        if(d < 2){
+            throw new IllegalArgumentException("Arity must be at least 2: " + d);
+        }
+        this.d = d;
+        currentSize = 0;
+        heap = new int[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+        keys = (AnyType[]) new Comparable[capacity];
+    }
+
+    /**
+     * Insert an item into the priority queue, maintaining heap order.
+     * @param handle the item's handle, not already in the heap.
+     * @param key the item's key.
+     */
+    public void insert(int handle, AnyType key){
+        if(contains(handle)){
+            throw new IllegalArgumentException("Handle already in heap: " + handle);
+        }
+        keys[handle] = key;
+        heap[currentSize] = handle;
+        position[handle] = currentSize;
+        percolateUp(currentSize++);
+    }
+
+    /**
+     * @return true if handle is currently in the heap.
+     */
+    public boolean contains(int handle){
+        if(handle < 0 || handle >= position.length){
+            throw new IllegalArgumentException("Handle out of range: " + handle);
+        }
+        return position[handle] >= 0;
+    }
+
+    /**
+     * @return the key of handle, which must be in the heap.
+     */
+    public AnyType keyOf(int handle){
+        checkPresent(handle);
+        return keys[handle];
+    }
+
+    /**
+     * Find the smallest key in the priority queue.
+     * @return the smallest key, or throw an UnderflowException if empty.
+     */
+    public AnyType findMin(){
+        return keys[minHandle()];
+    }
+
+    /**
+     * @return the handle of the smallest key, or throw an UnderflowException if empty.
+     */
+    public int minHandle(){
+        if(isEmpty()){
+            throw new BufferUnderflowException();
+        }
+        return heap[0];
+    }
+
+    /**
+     * Remove the smallest item from the priority queue.
+     * @return the handle of the smallest item, or throw an UnderflowException if empty.
+     */
+    public int deleteMin(){
+        int minHandle = minHandle();
+        removeAt(0);
+        return minHandle;
+    }
+
+    /**
+     * Lower the key of an item and restore heap order, in O(log_d N).
+     * @param handle an item in the heap.
+     * @param newKey the new key, no larger than the current one.
+     */
+    public void decreaseKey(int handle, AnyType newKey){
+        checkPresent(handle);
+        if(newKey.compareTo(keys[handle]) > 0){
+            throw new IllegalArgumentException("newKey/oldKey: " + newKey + " /" + keys[handle]);
+        }
+        keys[handle] = newKey;
+        percolateUp(position[handle]);
+    }
+
+    /**
+     * Raise the key of an item and restore heap order, in O(d log_d N).
+     * @param handle an item in the heap.
+     * @param newKey the new key, no smaller than the current one.
+     */
+    public void increaseKey(int handle, AnyType newKey){
+        checkPresent(handle);
+        if(newKey.compareTo(keys[handle]) < 0){
+            throw new IllegalArgumentException("newKey/oldKey: " + newKey + " /" + keys[handle]);
+        }
+        keys[handle] = newKey;
+        percolateDown(position[handle]);
+    }
+
+    /**
+     * Change the key of an item in either direction.
+     * @param handle an item in the heap.
+     * @param newKey the new key.
+     */
+    public void changeKey(int handle, AnyType newKey){
+        checkPresent(handle);
+        keys[handle] = newKey;
+        percolateUp(position[handle]);
+        percolateDown(position[handle]);
+    }
+
+    /**
+     * Remove an item from the priority queue, wherever it is.
+     * @param handle an item in the heap.
+     */
+    public void remove(int handle){
+        checkPresent(handle);
+        removeAt(position[handle]);
+    }
+
+    /**
+     * Test if the priority queue is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return currentSize == 0;
+    }
+
+    /**
+     * @return the number of items in the heap.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /**
+     * Make the priority queue logically empty.
+     */
+    public void makeEmpty(){
+        for(int i = 0; i < currentSize; i++){
+            position[heap[i]] = -1;
+            keys[heap[i]] = null;
+        }
+        currentSize = 0;
+    }
+
+    private void checkPresent(int handle){
+        if(!contains(handle)){
+            throw new IllegalArgumentException("Handle not in heap: " + handle);
+        }
+    }
+
+    /**
+     * Internal method to remove the item in a slot, filling the hole
+     * with the last item and moving that up or down as needed.
+     */
+    private void removeAt(int slot){
+        int handle = heap[slot];
+        position[handle] = -1;
+        keys[handle] = null;
+        if(slot != --currentSize){
+            int moved = heap[currentSize];
+            heap[slot] = moved;
+            position[moved] = slot;
+            percolateUp(slot);
+            percolateDown(position[moved]);
+        }
+    }
+
+    /**
+     * Internal method to percolate up in the heap.
+     * @param hole the slot at which the percolate begins.
+     */
+    private void percolateUp(int hole){
+        int handle = heap[hole];
+        AnyType key = keys[handle];
+        while (hole > 0){
+            int parent = (hole - 1) / d;
+            if(key.compareTo(keys[heap[parent]]) >= 0){
+                break;
+            }
+            heap[hole] = heap[parent];
+            position[heap[hole]] = hole;
+            hole = parent;
+        }
+        heap[hole] = handle;
+        position[handle] = hole;
+    }
+
+    /**
+     * Internal method to percolate down in the heap.
+     * @param hole the slot at which the percolate begins.
+     */
+    private void percolateDown(int hole){
+        int handle = heap[hole];
+        AnyType key = keys[handle];
+        for(int first = d * hole + 1; first < currentSize; first = d * hole + 1){
+            int last = Math.min(first + d, currentSize);
+            int child = first;
+            for(int c = first + 1; c < last; c++){
+                if(keys[heap[c]].compareTo(keys[heap[child]]) < 0){
+                    child = c;
+                }
+            }
+            if(keys[heap[child]].compareTo(key) >= 0){
+                break;
+            }
+            heap[hole] = heap[child];
+            position[heap[hole]] = hole;
+            hole = child;
+        }
+        heap[hole] = handle;
+        position[handle] = hole;
+    }
+
+    public static void main(String[] args) {
+        int numItems = 10000;
+        IndexedDaryHeap<Integer> h = new IndexedDaryHeap<>(numItems);
+        int i;
+        int j;
+
+        System.out.println("Checking; no bad output is good");
+        for(i = 37; i != 0; i = (i + 37) % numItems){
+            h.insert(i, i);
+        }
+        for(i = 1; i < numItems; i++){
+            if(h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+        for(i = 0, j = numItems / 2; i < numItems; i++, j = (j + 71) % numItems){
+            h.insert(j, j + numItems);
+        }
+        for(i = 0, j = numItems / 2; i < numItems; i++, j = (j + 53) % numItems){
+            h.decreaseKey(j, h.keyOf(j) - numItems);
+        }
+        // Raise the odd keys out of the way, then take every third away
+        for(i = 1; i < numItems; i += 2){
+            h.increaseKey(i, i + 2 * numItems);
+        }
+        for(i = 0; i < numItems; i += 3){
+            h.remove(i);
+        }
+        for(i = 0; i < numItems; i += 2){
+            if(i % 3 != 0 && h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+        for(i = 1; i < numItems; i += 2){
+            if(i % 3 != 0 && h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+        if(!h.isEmpty()){
+            System.out.println("Oops! " + h.size() + " left");
+        }
+
+        // Dijkstra's algorithm on a random graph, the workload decreaseKey is for
+        final int VERTICES = 1_000_000;
+        final int DEGREE = 8;
+        Random r = new Random(1);
+        int[] target = new int[VERTICES * DEGREE];
+        int[] weight = new int[VERTICES * DEGREE];
+        for(i = 0; i < target.length; i++){
+            target[i] = r.nextInt(VERTICES);
+            weight[i] = 1 + r.nextInt(1000);
+        }
+        long[] expected = null;
+        String[] names = { "BinaryHeap, lazy deletion", "PairingHeap", "IndexedDaryHeap d=2",
+                "IndexedDaryHeap d=4", "IndexedDaryHeap d=8" };
+        for(int round = 0; round < 2; round++){
+            for(int heapType = 0; heapType < names.length; heapType++){
+                long start = System.currentTimeMillis();
+                long[] dist = heapType == 0 ? dijkstraBinary(target, weight, DEGREE)
+                        : heapType == 1 ? dijkstraPairing(target, weight, DEGREE)
+                        : dijkstraIndexed(target, weight, DEGREE, 1 << (heapType - 1));
+                long end = System.currentTimeMillis();
+                if(expected == null){
+                    expected = dist;
+                }else if(!Arrays.equals(expected, dist)){
+                    System.out.println("Oops! " + names[heapType] + " disagrees");
+                }
+                System.out.println(names[heapType] + ": " + (end - start) + "ms");
+            }
+        }
+    }
+
+    /**
+     * A vertex and a tentative distance, for the heaps that hold objects.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final int vertex;
+        final long dist;
+
+        Entry(int vertex, long dist){
+            this.vertex = vertex;
+            this.dist = dist;
+        }
+
+        public int compareTo(Entry rhs){
+            return Long.compare(dist, rhs.dist);
+        }
+    }
+
+    private static long[] newDistances(int vertices){
+        long[] dist = new long[vertices];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        dist[0] = 0;
+        return dist;
+    }
+
+    /**
+     * Without decreaseKey a shorter path is inserted again, and stale entries are skipped.
+     */
+    private static long[] dijkstraBinary(int[] target, int[] weight, int degree){
+        long[] dist = newDistances(target.length / degree);
+        BinaryHeap<Entry> h = new BinaryHeap<>();
+        h.insert(new Entry(0, 0));
+        while (!h.isEmpty()){
+            Entry e = h.deleteMin();
+            if(e.dist != dist[e.vertex]){
+                continue;
+            }
+            for(int k = e.vertex * degree; k < (e.vertex + 1) * degree; k++){
+                long alt = e.dist + weight[k];
+                if(alt < dist[target[k]]){
+                    dist[target[k]] = alt;
+                    h.insert(new Entry(target[k], alt));
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static long[] dijkstraPairing(int[] target, int[] weight, int degree){
+        long[] dist = newDistances(target.length / degree);
+        PairingHeap<Entry> h = new PairingHeap<>();
+        PairingHeap.Position<Entry>[] positions = new PairingHeap.Position[dist.length];
+        boolean[] done = new boolean[dist.length];
+        positions[0] = h.insert(new Entry(0, 0));
+        while (!h.isEmpty()){
+            Entry e = h.deleteMin();
+            done[e.vertex] = true;
+            for(int k = e.vertex * degree; k < (e.vertex + 1) * degree; k++){
+                int v = target[k];
+                long alt = e.dist + weight[k];
+                if(alt < dist[v]){
+                    dist[v] = alt;
+                    if(positions[v] == null){
+                        positions[v] = h.insert(new Entry(v, alt));
+                    }else if(!done[v]){
+                        h.decreaseKey(positions[v], new Entry(v, alt));
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static long[] dijkstraIndexed(int[] target, int[] weight, int degree, int d){
+        long[] dist = newDistances(target.length / degree);
+        IndexedDaryHeap<Long> h = new IndexedDaryHeap<>(dist.length, d);
+        h.insert(0, 0L);
+        while (!h.isEmpty()){
+            int u = h.deleteMin();
+            for(int k = u * degree; k < (u + 1) * degree; k++){
+                int v = target[k];
+                long alt = dist[u] + weight[k];
+                if(alt < dist[v]){
+                    if(dist[v] == Long.MAX_VALUE){
+                        h.insert(v, alt);
+                    }else {
+                        h.decreaseKey(v, alt);
+                    }
+                    dist[v] = alt;
+                }
+            }
+        }
+        return dist;
+    }
+}
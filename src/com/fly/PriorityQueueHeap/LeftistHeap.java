@@ -6,14 +6,22 @@ package com.fly.PriorityQueueHeap;
 
 
 import java.nio.BufferUnderflowException;
+import java.util.Arrays;
 
 /**
  * Implements a leftist heap.
+ * Merging is iterative: the right paths are walked down onto an explicit
+ * stack and the merged path is rebuilt on the way back up, so no call
+ * depth depends on the heap. Nodes freed by deleteMin are kept in a pool
+ * and reused by insert, so a heap that stays about the same size stops
+ * allocating.
  * Note that all "matching" is based on the compareTo method.
  */
 public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
 
     private LeftistNode<AnyType> root;  //root
+    private LeftistNode<AnyType> free;  //Pool of unused nodes, linked through right
+    private LeftistNode<AnyType>[] path = new LeftistNode[64];  //Merge stack
 
     /**
      * Construct the leftist heap.
@@ -37,37 +45,40 @@ public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
 
     /**
      * Internal method to merge two roots.
-     * Deals with deviant cases and calls recursive merge1.
+     * First pass: walk down the two right paths, stacking the smaller root
+     * at each step, until one runs out. Second pass: pop the stack, hanging
+     * the merged tree below each node and restoring the leftist property.
      */
     private LeftistNode<AnyType> merge(LeftistNode<AnyType> h1, LeftistNode<AnyType> h2){
-        if(h1 == null){
-            return h2;
-        }
-        if(h2 == null){
-            return h1;
-        }
-        if(h1.element.compareTo(h2.element) < 0){
-            return merge1(h1, h2);
-        }else{
-            return merge1(h2, h1);
+        int depth = 0;
+        while(h1 != null && h2 != null){
+            if(h1.element.compareTo(h2.element) >= 0){
+                LeftistNode<AnyType> tmp = h1;
+                h1 = h2;
+                h2 = tmp;
+            }
+            if(depth == path.length){
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = h1;
+            h1 = h1.right;
         }
-    }
-
-    /**
-     * Internal method to merge two roots.
-     * Assumes trees are not empty, and h1's root contains smallest item.
-     */
-    private LeftistNode<AnyType> merge1(LeftistNode<AnyType> h1, LeftistNode<AnyType> h2){
-        if(h1.left == null){   // Single node
-            h1.left = h2;   // Other fields in h1 already accurate
-        }else{
-            h1.right = merge(h1.right, h2);
-            if(h1.left.npl < h1.right.npl){
-                swapChildren(h1);
+        LeftistNode<AnyType> merged = h1 != null ? h1 : h2;
+        while(depth > 0){
+            LeftistNode<AnyType> t = path[--depth];
+            path[depth] = null;
+            if(t.left == null){   // Single node
+                t.left = merged;    // Other fields in t already accurate
+            }else{
+                t.right = merged;
+                if(t.left.npl < t.right.npl){
+                    swapChildren(t);
+                }
+                t.npl = t.right.npl + 1;
             }
-            h1.npl = h1.right.npl + 1;
+            merged = t;
         }
-        return  h1;
+        return merged;
     }
 
     /**
@@ -84,7 +95,21 @@ public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
      * @param x the item to insert.
      */
     public void insert(AnyType x){
-        root = merge(new LeftistNode<AnyType>(x), root);
+        root = merge(newNode(x), root);
+    }
+
+    /**
+     * Take a node from the pool, or allocate one if it is empty.
+     */
+    private LeftistNode<AnyType> newNode(AnyType x){
+        LeftistNode<AnyType> t = free;
+        if(t == null){
+            return new LeftistNode<>(x);
+        }
+        free = t.right;
+        t.element = x;
+        t.right = null;
+        return t;
     }
 
     /**
@@ -106,8 +131,14 @@ public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
         if(isEmpty()){
             throw new BufferUnderflowException();
         }
-        AnyType minItem = root.element;
-        root = merge(root.left, root.right);
+        LeftistNode<AnyType> t = root;
+        AnyType minItem = t.element;
+        root = merge(t.left, t.right);
+        t.element = null;
+        t.left = null;
+        t.npl = 0;
+        t.right = free;
+        free = t;
         return minItem;
     }
 
@@ -124,6 +155,7 @@ public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
      */
     public void makeEmpty(){
         root = null;
+        free = null;
     }
 
     private static class LeftistNode<AnyType>{
@@ -164,5 +196,15 @@ public class LeftistHeap<AnyType extends Comparable<? super AnyType>>{
                 System.out.println("Oops! " + i);
             }
         }
+
+        // Refill from the pool, from both ends, and drain again
+        for(i = 1; i < numItems; i++){
+            h.insert(i % 2 == 0 ? i : numItems - i);
+        }
+        for(i = 1; i < numItems; i++){
+            if(h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
     }
 }
@@ -0,0 +1,280 @@
+package com.fly.PriorityQueueHeap;
+
+import java.nio.BufferUnderflowException;
+import java.util.Random;
+
+/**
+ * Implements a binary heap of long priorities, each carrying an int payload.
+ * The priorities and payloads are kept in two parallel arrays, so nothing
+ * is boxed and percolateDown compares longs directly instead of calling
+ * compareTo. The payload is typically an index into the caller's own
+ * arrays, such as the slot of a timer.
+ * Duplicate priorities are allowed; their order is unspecified.
+ */
+public class LongIntHeap {
+
+    private static final int DEFAULT_CAPACITY = 10;
+    private int currentSize;     // Number of elements in heap
+    private long[] priorities;   // The heap array; the root is at 1
+    private int[] payloads;      // payloads[i] belongs to priorities[i]
+
+    /**
+     * Construct the heap.
+     */
+    public LongIntHeap(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct the heap.
+     * @param capacity the capacity of the heap.
+     */
+    public LongIntHeap(int capacity){
+        currentSize = 0;
+        priorities = new long[capacity + 1];
+        payloads = new int[capacity + 1];
+    }
+
+    /**
+     * Construct the heap from parallel arrays, in linear time.
+     * @param priorities the priorities.
+     * @param payloads payloads[i] belongs to priorities[i]; the same length.
+     */
+    public LongIntHeap(long[] priorities, int[] payloads){
+        this(priorities.length);
+        insertAll(priorities, payloads);
+    }
+
+    /**
+     * Insert into the priority queue, maintaining heap order.
+     * @param priority the priority; smaller comes out first.
+     * @param payload the value returned by deleteMin.
+     */
+    public void insert(long priority, int payload){
+        if(currentSize == priorities.length - 1){
+            enlargeArray(priorities.length * 2 + 1);
+        }
+        int hole = ++currentSize;
+        for( ; hole > 1 && priority < priorities[hole / 2]; hole /= 2){
+            priorities[hole] = priorities[hole / 2];
+            payloads[hole] = payloads[hole / 2];
+        }
+        priorities[hole] = priority;
+        payloads[hole] = payload;
+    }
+
+    /**
+     * Insert many items at once. If they are at least as many as the items
+     * already present, the heap is rebuilt bottom-up in linear time rather
+     * than percolating each one up.
+     * @param priorities the priorities.
+     * @param payloads payloads[i] belongs to priorities[i]; the same length.
+     */
+    public void insertAll(long[] priorities, int[] payloads){
+        if(payloads.length != priorities.length){
+            throw new IllegalArgumentException("Payload length " + payloads.length + " != " + priorities.length);
+        }
+        if(priorities.length < currentSize){
+            for(int i = 0; i < priorities.length; i++){
+                insert(priorities[i], payloads[i]);
+            }
+            return;
+        }
+        if(currentSize + priorities.length >= this.priorities.length){
+            enlargeArray(currentSize + priorities.length + 1);
+        }
+        System.arraycopy(priorities, 0, this.priorities, currentSize + 1, priorities.length);
+        System.arraycopy(payloads, 0, this.payloads, currentSize + 1, payloads.length);
+        currentSize += priorities.length;
+        buildHeap();
+    }
+
+    private void enlargeArray(int newSize){
+        long[] oldPriorities = priorities;
+        int[] oldPayloads = payloads;
+        priorities = new long[newSize];
+        payloads = new int[newSize];
+        System.arraycopy(oldPriorities, 0, priorities, 0, currentSize + 1);
+        System.arraycopy(oldPayloads, 0, payloads, 0, currentSize + 1);
+    }
+
+    /**
+     * Find the smallest priority in the priority queue.
+     * @return the smallest priority, or throw an UnderflowException if empty.
+     */
+    public long peekPriority(){
+        if(isEmpty()){
+            throw new BufferUnderflowException();
+        }
+        return priorities[1];
+    }
+
+    /**
+     * Find the payload of the smallest priority.
+     * @return its payload, or throw an UnderflowException if empty.
+     */
+    public int peekPayload(){
+        if(isEmpty()){
+            throw new BufferUnderflowException();
+        }
+        return payloads[1];
+    }
+
+    /**
+     * Remove the smallest item from the priority queue.
+     * @return the payload of the smallest item, or throw an UnderflowException if empty.
+     */
+    public int deleteMin(){
+        int minPayload = peekPayload();
+        priorities[1] = priorities[currentSize];
+        payloads[1] = payloads[currentSize--];
+        percolateDown(1);
+        return minPayload;
+    }
+
+    /**
+     * Establish heap order property from an arbitrary
+     * arrangement of items. Runs in linear time.
+     */
+    private void buildHeap(){
+        for(int i = currentSize / 2; i > 0; i--){
+            percolateDown(i);
+        }
+    }
+
+    /**
+     * Test if the priority queue is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return currentSize == 0;
+    }
+
+    /**
+     * @return the number of items in the heap.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /**
+     * Make the priority queue logically empty.
+     */
+    public void makeEmpty(){
+        currentSize = 0;
+    }
+
+    /**
+     * Internal method to percolate down in the heap.
+     * @param hole the index at which the percolate begins.
+     */
+    private void percolateDown(int hole){
+        int child;
+        long tmp = priorities[hole];
+        int tmpPayload = payloads[hole];
+        for( ; hole * 2 <= currentSize; hole = child){
+            child = hole * 2;
+            if(child != currentSize && priorities[child + 1] < priorities[child]){
+                child++;
+            }
+            if(priorities[child] < tmp){
+                priorities[hole] = priorities[child];
+                payloads[hole] = payloads[child];
+            }else {
+                break;
+            }
+        }
+        priorities[hole] = tmp;
+        payloads[hole] = tmpPayload;
+    }
+
+    public static void main(String[] args) {
+        int numItems = 10000;
+        LongIntHeap h = new LongIntHeap();
+        int i;
+        for(i = 37; i != 0; i = (i + 37) % numItems){
+            h.insert(i, -i);
+        }
+        for(i = 1; i < numItems; i++){
+            if(h.peekPriority() != i || h.deleteMin() != -i){
+                System.out.println("Oops! " + i);
+            }
+        }
+        long[] priorities = new long[numItems];
+        int[] payloads = new int[numItems];
+        for(i = 0; i < numItems; i++){
+            priorities[i] = (i * 37L) % numItems;
+            payloads[i] = (int) priorities[i];
+        }
+        h.insert(-1, -1);
+        h.insertAll(priorities, payloads);
+        for(i = -1; i < numItems; i++){
+            if(h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+
+        // A timer queue: each fired timer schedules its successor a random delay later.
+        // Ties may fire in either order, but the deadlines fired are the same
+        final int TIMERS = 100_000;
+        final int FIRINGS = 20_000_000;
+        Random r = new Random(1);
+        int[] delays = new int[1 << 16];
+        for(i = 0; i < delays.length; i++){
+            delays[i] = 1 + r.nextInt(1_000_000);
+        }
+        for(int round = 0; round < 3; round++){
+            long start = System.currentTimeMillis();
+            BinaryHeap<Timer> boxed = new BinaryHeap<>();
+            for(i = 0; i < TIMERS; i++){
+                boxed.insert(new Timer(delays[i & (delays.length - 1)], i));
+            }
+            long boxedSum = 0;
+            for(i = 0; i < FIRINGS; i++){
+                Timer t = boxed.deleteMin();
+                boxedSum += t.deadline;
+                boxed.insert(new Timer(t.deadline + delays[i & (delays.length - 1)], t.id));
+            }
+            long end = System.currentTimeMillis();
+            long boxedTime = end - start;
+
+            start = System.currentTimeMillis();
+            LongIntHeap primitive = new LongIntHeap(TIMERS);
+            long[] deadlines = new long[TIMERS];
+            for(i = 0; i < TIMERS; i++){
+                deadlines[i] = delays[i & (delays.length - 1)];
+                primitive.insert(deadlines[i], i);
+            }
+            long primitiveSum = 0;
+            for(i = 0; i < FIRINGS; i++){
+                int id = primitive.deleteMin();
+                primitiveSum += deadlines[id];
+                deadlines[id] += delays[i & (delays.length - 1)];
+                primitive.insert(deadlines[id], id);
+            }
+            end = System.currentTimeMillis();
+            if(boxedSum != primitiveSum){
+                System.out.println("Oops! different deadlines fired");
+            }
+            System.out.println(FIRINGS + " timer firings: BinaryHeap<Timer> " + boxedTime
+                    + "ms, LongIntHeap " + (end - start) + "ms");
+        }
+    }
+
+    /**
+     * A timer as the boxed heaps need it, for comparison.
+     */
+    private static final class Timer implements Comparable<Timer> {
+        final long deadline;
+        final int id;
+
+        Timer(long deadline, int id){
+            this.deadline = deadline;
+            this.id = id;
+        }
+
+        public int compareTo(Timer rhs){
+            return Long.compare(deadline, rhs.deadline);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.fly.PriorityQueueHeap;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Implements a skew heap, the self-adjusting version of a leftist heap.
+ * No null path length is kept: merge swaps the children of every node on
+ * the merged right path unconditionally, which gives O(log N) amortized
+ * time per operation. A single right path can still be O(N) long, so
+ * merge is top-down and iterative rather than recursive.
+ * Nodes freed by deleteMin are kept in a pool and reused by insert.
+ * Note that all "matching" is based on the compareTo method.
+ */
+public class SkewHeap<AnyType extends Comparable<? super AnyType>>{
+
+    private SkewNode<AnyType> root;  //root
+    private SkewNode<AnyType> free;  //Pool of unused nodes, linked through right
+
+    /**
+     * Construct the skew heap.
+     */
+    public SkewHeap(){
+        root = null;
+    }
+
+    /**
+     * Merge rhs into the priority queue.
+     * rhs becomes empty. rhs must be different from this.
+     * @param rhs the other skew heap.
+     */
+    public void merge(SkewHeap<AnyType> rhs){
+        if(this == rhs){    // Avoid aliasing problems
+            return;
+        }
+        root = merge(root, rhs.root);
+        rhs.root = null;
+    }
+
+    /**
+     * Internal method to merge two roots.
+     * The smaller root wins; its old left child becomes its right child,
+     * and its new left child is the merge of its old right child with the
+     * other tree, which the loop goes on to build.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> SkewNode<AnyType> merge(SkewNode<AnyType> h1, SkewNode<AnyType> h2){
+        if(h1 == null){
+            return h2;
+        }
+        if(h2 == null){
+            return h1;
+        }
+        if(h1.element.compareTo(h2.element) >= 0){
+            SkewNode<AnyType> tmp = h1;
+            h1 = h2;
+            h2 = tmp;
+        }
+        SkewNode<AnyType> merged = h1;
+        SkewNode<AnyType> t = h1;
+        h1 = t.right;
+        t.right = t.left;
+        while(h1 != null && h2 != null){
+            if(h1.element.compareTo(h2.element) >= 0){
+                SkewNode<AnyType> tmp = h1;
+                h1 = h2;
+                h2 = tmp;
+            }
+            t.left = h1;
+            t = h1;
+            h1 = t.right;
+            t.right = t.left;
+        }
+        t.left = h1 != null ? h1 : h2;
+        return merged;
+    }
+
+    /**
+     * Insert into the priority queue, maintaining heap order.
+     * @param x the item to insert.
+     */
+    public void insert(AnyType x){
+        root = merge(newNode(x), root);
+    }
+
+    /**
+     * Take a node from the pool, or allocate one if it is empty.
+     */
+    private SkewNode<AnyType> newNode(AnyType x){
+        SkewNode<AnyType> t = free;
+        if(t == null){
+            return new SkewNode<>(x);
+        }
+        free = t.right;
+        t.element = x;
+        t.right = null;
+        return t;
+    }
+
+    /**
+     * Find the smallest item in the priority queue.
+     * @return the smallest item, or throw UnderflowException if empty.
+     */
+    public AnyType findMin(){
+        if(isEmpty()){
+            throw new BufferUnderflowException();
+        }
+        return root.element;
+    }
+
+    /**
+     * Remove the smallest item from the priority queue.
+     * @return the smallest item, or throw UnderflowException if empty.
+     */
+    public AnyType deleteMin(){
+        if(isEmpty()){
+            throw new BufferUnderflowException();
+        }
+        SkewNode<AnyType> t = root;
+        AnyType minItem = t.element;
+        root = merge(t.left, t.right);
+        t.element = null;
+        t.left = null;
+        t.right = free;
+        free = t;
+        return minItem;
+    }
+
+    /**
+     * Test if the priority queue is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return root == null;
+    }
+
+    /**
+     * Make the priority queue logically empty.
+     */
+    public void makeEmpty(){
+        root = null;
+        free = null;
+    }
+
+    private static class SkewNode<AnyType>{
+
+        AnyType element;    //The data in the node
+        SkewNode<AnyType> left;   //Left child
+        SkewNode<AnyType> right;   //Right child
+
+        SkewNode(AnyType theElement){
+            element = theElement;
+        }
+    }
+
+    public static void main(String[] args) {
+        int numItems = 10000;
+        SkewHeap<Integer> h = new SkewHeap<>();
+        SkewHeap<Integer> h1 = new SkewHeap<>();
+        int i;
+        for (i = 37; i != 0; i = (i + 37) % numItems) {
+            if(i % 2 == 0){
+                h1.insert(i);
+            }else {
+                h.insert(i);
+            }
+        }
+        h.merge(h1);
+        for(i = 1; i < numItems; i++){
+            if(h.deleteMin() != i){
+                System.out.println("Oops! " + i);
+            }
+        }
+
+        // An ascending and a descending run of a million each, merged and
+        // drained. From the second round on, the heap that was drained
+        // inserts into its pooled nodes
+        final int N = 1_000_000;
+        Integer[] items = new Integer[2 * N];
+        for(i = 0; i < items.length; i++){
+            items[i] = i;
+        }
+        SkewHeap<Integer> skewA = new SkewHeap<>();
+        SkewHeap<Integer> skewB = new SkewHeap<>();
+        LeftistHeap<Integer> leftistA = new LeftistHeap<>();
+        LeftistHeap<Integer> leftistB = new LeftistHeap<>();
+        for(int round = 0; round < 3; round++){
+            long start = System.currentTimeMillis();
+            for(i = 0; i < N; i++){
+                skewA.insert(items[2 * i]);
+                skewB.insert(items[2 * N - 1 - 2 * i]);
+            }
+            skewA.merge(skewB);
+            for(i = 0; i < 2 * N; i++){
+                if(skewA.deleteMin() != i){
+                    System.out.println("Oops! " + i);
+                    break;
+                }
+            }
+            long middle = System.currentTimeMillis();
+            for(i = 0; i < N; i++){
+                leftistA.insert(items[2 * i]);
+                leftistB.insert(items[2 * N - 1 - 2 * i]);
+            }
+            leftistA.merge(leftistB);
+            for(i = 0; i < 2 * N; i++){
+                if(leftistA.deleteMin() != i){
+                    System.out.println("Oops! " + i);
+                    break;
+                }
+            }
+            long end = System.currentTimeMillis();
+            System.out.println(2 * N + " items inserted, merged and deleted: SkewHeap " + (middle - start)
+                    + "ms, LeftistHeap " + (end - middle) + "ms");
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.fly.hash;
+
+import java.util.Random;
+
+/**
+ * Bucketized cuckoo hash table.
+ * Each hash function picks a bucket of SLOTS_PER_BUCKET cells rather than a
+ * single cell, which lets the table run above 90% load. An insertion whose
+ * kick chain exceeds COUNT_LIMIT goes to a small stash instead of forcing
+ * a rehash; the table is only rebuilt when the stash itself overflows.
+ */
+public class BucketizedCuckooHashTable<AnyType> {
+
+    private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int STASH_SIZE = 8;
+    private static final double MAX_LOAD = 0.93;
+    private static final int ALLOWED_REHASHES = 1;
+    private static final int COUNT_LIMIT = 500;
+
+    private final HashFamily<? super AnyType> hashFunctions;
+    private final int numHashFunctions;
+    private final TableSizing sizing;
+    private AnyType[] array;        // numBuckets * SLOTS_PER_BUCKET cells
+    private int numBuckets;
+    private TableSizing.Size bucketsSize;   // numBuckets and the hash reduction to a bucket
+    private AnyType[] stash;        // Items whose kick chain failed
+    private int stashSize;
+    private int currentSize;        // The number of items, stash included
+    private final int[] hashes;     // Hash values of the key being probed
+
+    private Random r = new Random();
+    private int rehashes = 0;       // Rehashes since the last expand
+
+    private long insertions;        // Metrics
+    private long totalKicks;
+    private int rehashCount;
+
+    public BucketizedCuckooHashTable(HashFamily<? super AnyType> hf){
+        this(hf, DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate number of items to hold.
+     */
+    public BucketizedCuckooHashTable(HashFamily<? super AnyType> hf, int size){
+        this(hf, size, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate number of items to hold.
+     * @param sizing prime or power-of-two bucket counts.
+     */
+    public BucketizedCuckooHashTable(HashFamily<? super AnyType> hf, int size, TableSizing sizing){
+        this.sizing = sizing;
+        allocateArray(Math.max(1, size / SLOTS_PER_BUCKET));
+        doClear();
+        hashFunctions = hf;
+        numHashFunctions = hf.getNumberOfFunctions();
+        hashes = new int[numHashFunctions];
+    }
+
+    /**
+     * Insert into the hash table. If the item is
+     * already present, return false.
+     * @param x the item to insert.
+     */
+    public boolean insert(AnyType x){
+        if(contains(x)){
+            return false;
+        }
+        // findPos has left the hash values of x in hashes, unless expand
+        // rebuilds the table after it
+        boolean hashed = true;
+        if(currentSize >= array.length * MAX_LOAD){
+            expand();
+            hashed = false;
+        }
+        insertions++;
+        insertHelper(x, hashed);
+        return true;
+    }
+
+    /**
+     * Place x, which is known to be absent, kicking out residents as needed.
+     * Falls back to the stash, and rebuilds the table only when that is full.
+     * @param hashed true if hashes already holds the hash values of x under
+     *        the current functions, as findPos leaves them.
+     */
+    private void insertHelper(AnyType x, boolean hashed){
+        while (true){
+            int lastBucket = -1;
+            for(int count = 0; count < COUNT_LIMIT; count++){
+                if(!hashed){
+                    hashFunctions.hashAll(x, hashes);   // Once per key, not per probe
+                }
+                hashed = false;     // x is a kicked-out resident from here on
+                for(int i = 0; i < numHashFunctions; i++){
+                    int slot = freeSlot(position(hashes[i]));
+                    if(slot != -1){
+                        array[slot] = x;
+                        currentSize++;
+                        return;
+                    }
+                }
+                // Every candidate bucket is full. Kick out a random resident,
+                // avoiding the bucket the current item was just evicted from.
+                int bucket;
+                int tries = 0;
+                do{
+                    bucket = position(hashes[r.nextInt(numHashFunctions)]);
+                }while (bucket == lastBucket && tries++ < 5);
+                int slot = bucket * SLOTS_PER_BUCKET + r.nextInt(SLOTS_PER_BUCKET);
+                AnyType tmp = array[slot];
+                array[slot] = x;
+                x = tmp;
+                lastBucket = bucket;
+                totalKicks++;
+            }
+            if(stashSize < STASH_SIZE){
+                stash[stashSize++] = x;
+                currentSize++;
+                return;
+            }
+            // Stash overflow: x is still homeless, so rebuild around it.
+            rehashCount++;
+            if(++rehashes > ALLOWED_REHASHES){
+                expand();
+            }else {
+                rehash(numBuckets, true);
+            }
+        }
+    }
+
+    /**
+     * Return the first empty cell in bucket, or -1 if the bucket is full.
+     */
+    private int freeSlot(int bucket){
+        int start = bucket * SLOTS_PER_BUCKET;
+        for(int s = start; s < start + SLOTS_PER_BUCKET; s++){
+            if(array[s] == null){
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reduce a raw hash value to a bucket index.
+     */
+    private int position(int hashVal){
+        return bucketsSize.index(hashVal);
+    }
+
+    private void expand(){
+        rehash(2 * numBuckets, false);
+        rehashes = 0;
+    }
+
+    /**
+     * Rebuild the table with the given number of buckets, optionally
+     * drawing new hash functions, and reinsert every item.
+     */
+    private void rehash(int newBuckets, boolean newFunctions){
+        if(newFunctions){
+            hashFunctions.generateNewFunctions();
+        }
+        AnyType[] oldArray = array;
+        AnyType[] oldStash = stash;
+        int oldStashSize = stashSize;
+        allocateArray(newBuckets);
+        currentSize = 0;
+        long kicks = totalKicks;    // Reinsertion kicks are not insert kick chains
+        for(AnyType item: oldArray){
+            if(item != null){
+                insertHelper(item, false);
+            }
+        }
+        for(int i = 0; i < oldStashSize; i++){
+            insertHelper(oldStash[i], false);
+        }
+        totalKicks = kicks;
+    }
+
+    /**
+     * Gets the size of the table.
+     * @return number of items in the hash table.
+     */
+    public int size(){
+        return currentSize;
+    }
+
+    /**
+     * Gets the length (potential capacity) of the table.
+     * @return number of cells in the hash table, excluding the stash.
+     */
+    public int capacity(){
+        return array.length;
+    }
+
+    /**
+     * @return the fraction of table cells in use.
+     */
+    public double loadFactor(){
+        return (double)(currentSize - stashSize) / array.length;
+    }
+
+    /**
+     * @return the mean number of evictions per successful insert.
+     */
+    public double averageKickChainLength(){
+        return insertions == 0 ? 0 : (double) totalKicks / insertions;
+    }
+
+    /**
+     * @return the number of rebuilds forced by a stash overflow;
+     * growth on reaching MAX_LOAD is not counted.
+     */
+    public int rehashCount(){
+        return rehashCount;
+    }
+
+    /**
+     * @return the number of items currently held in the stash.
+     */
+    public int stashSize(){
+        return stashSize;
+    }
+
+    /**
+     * Method that searches all candidate buckets.
+     * @param x the item to search for.
+     * @return the cell holding x, or -1 if x is not in the table proper.
+     */
+    private int findPos(AnyType x){
+        hashFunctions.hashAll(x, hashes);
+        for(int i = 0; i < numHashFunctions; i++){
+            int start = position(hashes[i]) * SLOTS_PER_BUCKET;
+            for(int s = start; s < start + SLOTS_PER_BUCKET; s++){
+                if(array[s] != null && array[s].equals(x)){
+                    return s;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int findInStash(AnyType x){
+        for(int i = 0; i < stashSize; i++){
+            if(stash[i].equals(x)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove from the hash table.
+     * The freed cell may let a stashed item move back into the table.
+     * @param x the item to remove.
+     * @return true if item was found and removed.
+     */
+    public boolean remove(AnyType x){
+        int pos = findPos(x);
+        if(pos != -1){
+            array[pos] = null;
+            currentSize--;
+            drainStash();
+            return true;
+        }
+        int s = findInStash(x);
+        if(s != -1){
+            stash[s] = stash[--stashSize];
+            stash[stashSize] = null;
+            currentSize--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move stashed items into any free cell among their candidate buckets.
+     */
+    private void drainStash(){
+        for(int i = stashSize - 1; i >= 0; i--){
+            AnyType x = stash[i];
+            hashFunctions.hashAll(x, hashes);
+            for(int f = 0; f < numHashFunctions; f++){
+                int slot = freeSlot(position(hashes[f]));
+                if(slot != -1){
+                    array[slot] = x;
+                    stash[i] = stash[--stashSize];
+                    stash[stashSize] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find an item in the hash table.
+     * @param x the item to search for.
+     * @return true if the item is present.
+     */
+    public boolean contains(AnyType x){
+        return findPos(x) != -1 || findInStash(x) != -1;
+    }
+
+    /**
+     * Make the hash table logically empty.
+     */
+    public void makeEmpty(){
+        doClear();
+    }
+
+    private void doClear(){
+        currentSize = 0;
+        stashSize = 0;
+        for(int i = 0; i < array.length; i++){
+            array[i] = null;
+        }
+        for(int i = 0; i < stash.length; i++){
+            stash[i] = null;
+        }
+    }
+
+    /**
+     * Internal method to allocate the table and stash.
+     * @param buckets the smallest acceptable number of buckets.
+     */
+    private void allocateArray(int buckets){
+        bucketsSize = sizing.sizeFor(buckets);
+        numBuckets = bucketsSize.length;
+        array = (AnyType[]) new Object[numBuckets * SLOTS_PER_BUCKET];
+        stash = (AnyType[]) new Object[STASH_SIZE];
+        stashSize = 0;
+    }
+
+    public static void main(String[] args) {
+        long cumulative = 0;
+
+        final int NUMS = 2000000;
+        final int GAP = 37;
+        final int ATTEMPTS = 10;
+
+        System.out.println("Checking...(no more output means success)");
+
+        for(int att = 0; att < ATTEMPTS; att++){
+            System.out.println("ATTEMPTS: " + att);
+
+            BucketizedCuckooHashTable<String> H = new BucketizedCuckooHashTable<>(new StringHashFamily(2));
+
+            long startTime = System.currentTimeMillis();
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                H.insert(" " + i);
+            }
+            System.out.println("Load factor " + H.loadFactor() + ", average kick chain "
+                    + H.averageKickChainLength() + ", rehashes " + H.rehashCount() + ", stashed " + H.stashSize());
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                if(H.insert(" " + i)){
+                    System.out.println("OOPS!!!" + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                H.remove(" " + i);
+            }
+            for(int i = 2; i < NUMS; i += 2){
+                if(!H.contains(" " + i)){
+                    System.out.println("Find fails " + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                if(H.contains(" " + i)){
+                    System.out.println("OOPS!!!" + i);
+                }
+            }
+            long endTime = System.currentTimeMillis();
+            cumulative += endTime - startTime;
+            if(H.capacity() > NUMS * 4){
+                System.out.println("LARGE CAPACITY " + H.capacity());
+            }
+            System.out.println("Total elapsed time is: " + cumulative);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.fly.hash;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe bucketized cuckoo hash table with optimistic, lock-free lookups.
+ * Buckets are grouped into lock stripes, each with a version counter that is
+ * odd while a writer is changing the stripe. contains reads the versions of
+ * all candidate stripes, scans the buckets, and retries if any version moved.
+ * insert first tries a free slot in a candidate bucket; if none exists it
+ * searches breadth-first for a short cuckoo path without holding locks, then
+ * shifts the path one item at a time, each move locking just two stripes.
+ * Growing the table locks every stripe.
+ * The hash family must not be shared with another table.
+ */
+public class ConcurrentCuckooHashTable<AnyType> {
+
+    private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int NUM_STRIPES = 1024;
+    private static final double MAX_LOAD = 0.90;
+    private static final int MAX_BFS_NODES = 2000;  // Bound on buckets visited per path search
+
+    private final HashFamily<? super AnyType> hashFunctions;
+    private final int numHashFunctions;
+    private final TableSizing sizing;
+    private final ReentrantLock[] locks = new ReentrantLock[NUM_STRIPES];
+    private final AtomicLongArray versions = new AtomicLongArray(NUM_STRIPES);
+    private final AtomicInteger currentSize = new AtomicInteger();
+    private volatile Table table;
+    private volatile long epoch;    // Odd while the table is being replaced
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public ConcurrentCuckooHashTable(HashFamily<? super AnyType> hf){
+        this(hf, DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate number of items to hold.
+     */
+    public ConcurrentCuckooHashTable(HashFamily<? super AnyType> hf, int size){
+        this(hf, size, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate number of items to hold.
+     * @param sizing prime or power-of-two bucket counts.
+     */
+    public ConcurrentCuckooHashTable(HashFamily<? super AnyType> hf, int size, TableSizing sizing){
+        this.sizing = sizing;
+        hashFunctions = hf;
+        numHashFunctions = hf.getNumberOfFunctions();
+        for(int i = 0; i < NUM_STRIPES; i++){
+            locks[i] = new ReentrantLock();
+        }
+        table = new Table(sizing.sizeFor(Math.max(1, size / SLOTS_PER_BUCKET)));
+    }
+
+    /**
+     * Find an item in the hash table. Takes no locks.
+     * @param x the item to search for.
+     * @return true if the item is present.
+     */
+    public boolean contains(AnyType x){
+        Scratch sc = scratch.get();
+        int[] buckets = sc.buckets;
+        long[] seen = sc.versions;
+        for(;;){
+            long e = epoch;
+            if((e & 1) != 0){
+                Thread.yield();   // The table is being replaced
+                continue;
+            }
+            Table t = table;
+            boolean stable = true;
+            bucketsOf(t, x, buckets);
+            for(int i = 0; i < numHashFunctions && stable; i++){
+                seen[i] = versions.get(stripe(buckets[i]));
+                stable = (seen[i] & 1) == 0;
+            }
+            if(!stable){
+                continue;
+            }
+            boolean found = false;
+            for(int i = 0; i < numHashFunctions && !found; i++){
+                found = t.findSlot(buckets[i], x) != -1;
+            }
+            for(int i = 0; i < numHashFunctions && stable; i++){
+                stable = versions.get(stripe(buckets[i])) == seen[i];
+            }
+            if(stable && epoch == e){
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Insert into the hash table. If the item is
+     * already present, return false.
+     * @param x the item to insert.
+     */
+    public boolean insert(AnyType x){
+        int[] buckets = scratch.get().buckets;
+        for(;;){
+            Table t = table;
+            if(currentSize.get() >= t.capacity() * MAX_LOAD){
+                expand(t);
+                continue;
+            }
+            bucketsOf(t, x, buckets);
+            int[] held = lockStripes(buckets);
+            try{
+                if(t != table){
+                    continue;
+                }
+                for(int b: buckets){
+                    if(t.findSlot(b, x) != -1){
+                        return false;
+                    }
+                }
+                for(int b: buckets){
+                    int slot = t.findSlot(b, null);
+                    if(slot != -1){
+                        write(t, b, slot, x);
+                        currentSize.incrementAndGet();
+                        return true;
+                    }
+                }
+            }finally {
+                unlockStripes(held);
+            }
+            // All candidate buckets are full: open a slot by shifting a cuckoo path.
+            if(!makeRoom(t, buckets)){
+                expand(t);
+            }
+        }
+    }
+
+    /**
+     * Remove from the hash table.
+     * @param x the item to remove.
+     * @return true if item was found and removed.
+     */
+    public boolean remove(AnyType x){
+        int[] buckets = scratch.get().buckets;
+        for(;;){
+            Table t = table;
+            bucketsOf(t, x, buckets);
+            int[] held = lockStripes(buckets);
+            try{
+                if(t != table){
+                    continue;
+                }
+                for(int b: buckets){
+                    int slot = t.findSlot(b, x);
+                    if(slot != -1){
+                        write(t, b, slot, null);
+                        currentSize.decrementAndGet();
+                        return true;
+                    }
+                }
+                return false;
+            }finally {
+                unlockStripes(held);
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the table.
+     * @return number of items in the hash table.
+     */
+    public int size(){
+        return currentSize.get();
+    }
+
+    /**
+     * Gets the length (potential capacity) of the table.
+     * @return number of cells in the hash table.
+     */
+    public int capacity(){
+        return table.capacity();
+    }
+
+    /**
+     * Make the hash table logically empty.
+     */
+    public void makeEmpty(){
+        lockAll();
+        try{
+            epoch++;
+            table = new Table(table.size);
+            currentSize.set(0);
+            epoch++;
+        }finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Search breadth-first, without locks, for a cuckoo path that ends in a
+     * free slot, then shift it back towards the start. Each move is validated
+     * under the locks of its two stripes; a stale path just returns true so
+     * the caller retries from scratch.
+     * @return false if no path was found within MAX_BFS_NODES buckets.
+     */
+    private boolean makeRoom(Table t, int[] starts){
+        int[] bucketOf = new int[MAX_BFS_NODES];
+        int[] parent = new int[MAX_BFS_NODES];    // Index of the node we came from
+        int[] slotOf = new int[MAX_BFS_NODES];    // Slot in the parent bucket that was followed
+        Object[] itemOf = new Object[MAX_BFS_NODES];  // Item seen in that slot during the search
+        int[] alts = new int[numHashFunctions];
+        int head = 0, tail = 0;
+        for(int b: starts){
+            bucketOf[tail] = b;
+            parent[tail] = -1;
+            tail++;
+        }
+        while (head < tail){
+            int node = head++;
+            int b = bucketOf[node];
+            for(int s = 0; s < SLOTS_PER_BUCKET; s++){
+                AnyType y = t.get(b, s);
+                if(y == null){
+                    continue;   // Freed concurrently; the caller will find it
+                }
+                bucketsOf(t, y, alts);
+                for(int alt: alts){
+                    if(alt == b){
+                        continue;
+                    }
+                    int free = t.findSlot(alt, null);
+                    if(free != -1){
+                        if(!move(t, b, s, y, alt, free)){
+                            return true;
+                        }
+                        shiftPath(t, node, bucketOf, parent, slotOf, itemOf, b, s);
+                        return true;
+                    }
+                    if(tail < MAX_BFS_NODES){
+                        bucketOf[tail] = alt;
+                        parent[tail] = node;
+                        slotOf[tail] = s;
+                        itemOf[tail] = y;
+                        tail++;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Having emptied slot s of node's bucket, walk back up the BFS tree
+     * moving each parent's item into the slot just vacated. Only the item
+     * seen during the search may move: toBucket is one of its buckets, but
+     * not necessarily one of whatever has replaced it since.
+     */
+    private void shiftPath(Table t, int node, int[] bucketOf, int[] parent, int[] slotOf, Object[] itemOf,
+                           int toBucket, int toSlot){
+        while (parent[node] != -1){
+            int from = parent[node];
+            int fromBucket = bucketOf[from];
+            int fromSlot = slotOf[node];
+            AnyType y = (AnyType) itemOf[node];
+            if(!move(t, fromBucket, fromSlot, y, toBucket, toSlot)){
+                return;
+            }
+            node = from;
+            toBucket = fromBucket;
+            toSlot = fromSlot;
+        }
+    }
+
+    /**
+     * Move y from (fromBucket, fromSlot) to the empty (toBucket, toSlot).
+     * y is written to its new slot before the old one is cleared.
+     * @return false if either slot changed since the path was found.
+     */
+    private boolean move(Table t, int fromBucket, int fromSlot, AnyType y, int toBucket, int toSlot){
+        int[] held = lockStripes(new int[]{ fromBucket, toBucket });
+        try{
+            if(t != table || t.get(fromBucket, fromSlot) != y || t.get(toBucket, toSlot) != null){
+                return false;
+            }
+            write(t, toBucket, toSlot, y);
+            write(t, fromBucket, fromSlot, null);
+            return true;
+        }finally {
+            unlockStripes(held);
+        }
+    }
+
+    /**
+     * Store x under the caller's stripe lock, making the stripe's version
+     * odd for the duration of the write.
+     */
+    private void write(Table t, int bucket, int slot, AnyType x){
+        int s = stripe(bucket);
+        versions.incrementAndGet(s);
+        t.set(bucket, slot, x);
+        versions.incrementAndGet(s);
+    }
+
+    /**
+     * Double the table if t is still current. Locks every stripe.
+     */
+    private void expand(Table t){
+        lockAll();
+        try{
+            if(t != table){
+                return;
+            }
+            epoch++;
+            TableSizing.Size newSize = t.size;
+            Table bigger;
+            do{
+                newSize = sizing.sizeFor(2 * newSize.length);
+                bigger = new Table(newSize);
+            }while (!bigger.reinsertAll(t));
+            table = bigger;
+            epoch++;
+        }finally {
+            unlockAll();
+        }
+    }
+
+    private int[] lockStripes(int[] buckets){
+        int[] stripes = new int[buckets.length];
+        for(int i = 0; i < buckets.length; i++){
+            stripes[i] = stripe(buckets[i]);
+        }
+        Arrays.sort(stripes);   // Fixed order, so writers cannot deadlock
+        int n = 0;
+        for(int i = 0; i < stripes.length; i++){
+            if(i == 0 || stripes[i] != stripes[i - 1]){
+                stripes[n++] = stripes[i];
+            }
+        }
+        stripes = Arrays.copyOf(stripes, n);
+        for(int s: stripes){
+            locks[s].lock();
+        }
+        return stripes;
+    }
+
+    private void unlockStripes(int[] stripes){
+        for(int i = stripes.length - 1; i >= 0; i--){
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    private void lockAll(){
+        for(ReentrantLock lock: locks){
+            lock.lock();
+        }
+    }
+
+    private void unlockAll(){
+        for(int i = NUM_STRIPES - 1; i >= 0; i--){
+            locks[i].unlock();
+        }
+    }
+
+    private static int stripe(int bucket){
+        return bucket & (NUM_STRIPES - 1);
+    }
+
+    /**
+     * Compute all candidate buckets of x in t with a single hashAll call.
+     */
+    private void bucketsOf(Table t, AnyType x, int[] out){
+        hashFunctions.hashAll(x, out);
+        for(int i = 0; i < out.length; i++){
+            out[i] = t.size.index(out[i]);
+        }
+    }
+
+    /**
+     * Per-thread arrays for the candidate buckets of the key being looked up
+     * and the stripe versions seen, so that no operation allocates them.
+     * contains, insert and remove never run inside one another on a thread.
+     */
+    private final class Scratch{
+        final int[] buckets = new int[numHashFunctions];
+        final long[] versions = new long[numHashFunctions];
+    }
+
+    /**
+     * The cells of one generation of the table.
+     */
+    private class Table{
+        final int numBuckets;
+        final TableSizing.Size size;    // numBuckets and the hash reduction to a bucket
+        final AtomicReferenceArray<AnyType> cells;
+
+        Table(TableSizing.Size buckets){
+            numBuckets = buckets.length;
+            size = buckets;
+            cells = new AtomicReferenceArray<>(numBuckets * SLOTS_PER_BUCKET);
+        }
+
+        int capacity(){
+            return cells.length();
+        }
+
+        AnyType get(int bucket, int slot){
+            return cells.get(bucket * SLOTS_PER_BUCKET + slot);
+        }
+
+        void set(int bucket, int slot, AnyType x){
+            cells.set(bucket * SLOTS_PER_BUCKET + slot, x);
+        }
+
+        /**
+         * @return the slot in bucket holding x (an empty slot if x is null), or -1.
+         */
+        int findSlot(int bucket, AnyType x){
+            for(int s = 0; s < SLOTS_PER_BUCKET; s++){
+                AnyType y = get(bucket, s);
+                if(x == null ? y == null : x.equals(y)){
+                    return s;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Single-threaded random-walk insertion of every item of old.
+         * Only called with every stripe locked.
+         * @return false if some item could not be placed.
+         */
+        boolean reinsertAll(Table old){
+            final int COUNT_LIMIT = 500;
+            Random r = new Random();
+            int[] buckets = new int[numHashFunctions];
+            for(int c = 0; c < old.cells.length(); c++){
+                AnyType x = old.cells.get(c);
+                int count = 0;
+                while (x != null){
+                    if(count++ == COUNT_LIMIT){
+                        return false;
+                    }
+                    bucketsOf(this, x, buckets);
+                    int bucket = -1;
+                    for(int i = 0; i < numHashFunctions && bucket == -1; i++){
+                        if(findSlot(buckets[i], null) != -1){
+                            bucket = buckets[i];
+                        }
+                    }
+                    if(bucket != -1){
+                        set(bucket, findSlot(bucket, null), x);
+                        x = null;
+                    }else {
+                        bucket = buckets[r.nextInt(numHashFunctions)];
+                        int slot = r.nextInt(SLOTS_PER_BUCKET);
+                        AnyType tmp = get(bucket, slot);
+                        set(bucket, slot, x);
+                        x = tmp;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final int NUMS = 2000000;
+        final int GAP = 37;
+
+        System.out.println("Checking...(no more output means success)");
+
+        ConcurrentCuckooHashTable<String> H = new ConcurrentCuckooHashTable<>(new StringHashFamily(2));
+        long startTime = System.currentTimeMillis();
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            H.insert(" " + i);
+        }
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            if(H.insert(" " + i)){
+                System.out.println("OOPS!!!" + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            H.remove(" " + i);
+        }
+        for(int i = 2; i < NUMS; i += 2){
+            if(!H.contains(" " + i)){
+                System.out.println("Find fails " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            if(H.contains(" " + i)){
+                System.out.println("OOPS!!!" + i);
+            }
+        }
+        System.out.println("Elapsed time: " + (System.currentTimeMillis() - startTime));
+
+        // Read-heavy scaling: 95% contains, 5% insert/remove, compared with
+        // CuckooHashTable behind one global lock.
+        final int OPS = 1000000;
+        final int KEYS = 1 << 18;
+        final String[] keys = new String[KEYS];
+        for(int i = 0; i < KEYS; i++){
+            keys[i] = " " + i;
+        }
+        for(int threads = 1; threads <= 32; threads *= 2){
+            final ConcurrentCuckooHashTable<String> concurrent = new ConcurrentCuckooHashTable<>(new StringHashFamily(2), KEYS);
+            final CuckooHashTable<String> global = new CuckooHashTable<>(new StringHashFamily(3), KEYS);
+            for(int i = 0; i < KEYS; i += 2){
+                concurrent.insert(keys[i]);
+                global.insert(keys[i]);
+            }
+            long concurrentTime = runReaders(threads, OPS, keys, new Op(){
+                public void apply(int kind, String x){
+                    if(kind == 0){
+                        concurrent.insert(x);
+                    }else if(kind == 1){
+                        concurrent.remove(x);
+                    }else {
+                        concurrent.contains(x);
+                    }
+                }
+            });
+            long globalTime = runReaders(threads, OPS, keys, new Op(){
+                public void apply(int kind, String x){
+                    synchronized (global){
+                        if(kind == 0){
+                            global.insert(x);
+                        }else if(kind == 1){
+                            global.remove(x);
+                        }else {
+                            global.contains(x);
+                        }
+                    }
+                }
+            });
+            System.out.println(threads + " threads: optimistic " + ((long) OPS * threads / Math.max(1, concurrentTime)) + " ops/ms, "
+                    + "global lock " + ((long) OPS * threads / Math.max(1, globalTime)) + " ops/ms");
+        }
+    }
+
+    private interface Op{
+        void apply(int kind, String x);
+    }
+
+    private static long runReaders(int threads, final int ops, final String[] keys, final Op op) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for(int i = 0; i < ops; i++){
+                    int p = r.nextInt(40);
+                    op.apply(p < 2 ? p : 2, keys[r.nextInt(keys.length)]);
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for(Thread w: workers){
+            w.start();
+        }
+        for(Thread w: workers){
+            w.join();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
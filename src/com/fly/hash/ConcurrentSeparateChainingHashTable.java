@@ -0,0 +1,425 @@
+package com.fly.hash;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe separate chaining hash table.
+ * CONSTRUCTION: an approximate initial size and number of lock stripes,
+ * or defaults of 101 and 16.
+ * Writers lock one stripe; bucket i is guarded by stripe i % numStripes.
+ * contains takes no lock: chains are linked through volatile references.
+ * The table doubles incrementally: once a resize starts, every insert and
+ * remove migrates at most TRANSFER_STRIDE buckets, and a migrated bucket
+ * is replaced by a forwarding node that sends callers to the new table.
+ * Note that all "matching" is based on the equals method.
+ */
+public class ConcurrentSeparateChainingHashTable<AnyType> {
+
+    private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int DEFAULT_STRIPES = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final double MAX_LOAD = 0.75;
+    private static final int TRANSFER_STRIDE = 16;  // Buckets migrated per operation
+    private static final int MOVED = -1;            // Hash of forwarding nodes
+
+    private volatile AtomicReferenceArray<Node<AnyType>> table;
+    private volatile Resize<AnyType> resizing;      // null unless a resize is in progress
+    private final ReentrantLock[] locks;
+    private final int stripeMask;
+    private final LongAdder currentSize = new LongAdder();
+
+    /**
+     * Construct the hash table.
+     */
+    public ConcurrentSeparateChainingHashTable(){
+        this(DEFAULT_TABLE_SIZE, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     */
+    public ConcurrentSeparateChainingHashTable(int size){
+        this(size, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     * @param concurrencyLevel the expected number of concurrent writers.
+     */
+    public ConcurrentSeparateChainingHashTable(int size, int concurrencyLevel){
+        int stripes = tableSizeFor(Math.max(1, concurrencyLevel));
+        locks = new ReentrantLock[stripes];
+        for(int i = 0; i < stripes; i++){
+            locks[i] = new ReentrantLock();
+        }
+        stripeMask = stripes - 1;
+        // The table is never smaller than the number of stripes, so buckets
+        // i and i + n of a doubled table share the stripe of old bucket i.
+        table = new AtomicReferenceArray<>(tableSizeFor(Math.max(size, stripes)));
+    }
+
+    /**
+     * Insert into the hash table. If the item is
+     * already present, do nothing.
+     * @param x the item to insert.
+     * @return true if x was inserted.
+     */
+    public boolean insert(AnyType x){
+        int hash = spread(x.hashCode());
+        helpResize();
+        AtomicReferenceArray<Node<AnyType>> tab = table;
+        int binCount;
+        for(;;){
+            int i = hash & (tab.length() - 1);
+            ReentrantLock lock = locks[i & stripeMask];
+            lock.lock();
+            try{
+                Node<AnyType> head = tab.get(i);
+                if(head != null && head.hash == MOVED){
+                    tab = ((ForwardingNode<AnyType>) head).nextTable;
+                    continue;
+                }
+                if(!isLive(tab)){
+                    tab = table;
+                    continue;
+                }
+                binCount = 0;
+                for(Node<AnyType> e = head; e != null; e = e.next, binCount++){
+                    if(e.hash == hash && e.element.equals(x)){
+                        return false;
+                    }
+                }
+                tab.set(i, new Node<>(hash, x, head));
+            }finally {
+                lock.unlock();
+            }
+            break;
+        }
+        currentSize.increment();
+        if(binCount > 0){
+            maybeStartResize(tab);
+        }
+        return true;
+    }
+
+    /**
+     * Remove from the hash table.
+     * @param x the item to remove.
+     * @return true if item removed.
+     */
+    public boolean remove(AnyType x){
+        int hash = spread(x.hashCode());
+        helpResize();
+        AtomicReferenceArray<Node<AnyType>> tab = table;
+        for(;;){
+            int i = hash & (tab.length() - 1);
+            ReentrantLock lock = locks[i & stripeMask];
+            lock.lock();
+            try{
+                Node<AnyType> head = tab.get(i);
+                if(head != null && head.hash == MOVED){
+                    tab = ((ForwardingNode<AnyType>) head).nextTable;
+                    continue;
+                }
+                if(!isLive(tab)){
+                    tab = table;
+                    continue;
+                }
+                for(Node<AnyType> e = head, pred = null; e != null; pred = e, e = e.next){
+                    if(e.hash == hash && e.element.equals(x)){
+                        if(pred == null){
+                            tab.set(i, e.next);
+                        }else {
+                            pred.next = e.next;
+                        }
+                        currentSize.decrement();
+                        return true;
+                    }
+                }
+                return false;
+            }finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Find an item in the hash table. Takes no locks.
+     * @param x the item to search for.
+     * @return true if the item is present.
+     */
+    public boolean contains(AnyType x){
+        int hash = spread(x.hashCode());
+        AtomicReferenceArray<Node<AnyType>> tab = table;
+        for(;;){
+            Node<AnyType> e = tab.get(hash & (tab.length() - 1));
+            if(e != null && e.hash == MOVED){
+                tab = ((ForwardingNode<AnyType>) e).nextTable;
+                continue;
+            }
+            for( ; e != null; e = e.next){
+                if(e.hash == hash && e.element.equals(x)){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get current size. Not a snapshot while writers are active.
+     * @return the size.
+     */
+    public int size(){
+        return (int) currentSize.sum();
+    }
+
+    /**
+     * Get the number of buckets in the current table.
+     * @return the number of buckets.
+     */
+    public int capacity(){
+        return table.length();
+    }
+
+    /**
+     * Make the hash table logically empty.
+     * Blocks all writers while the table is replaced.
+     */
+    public void makeEmpty(){
+        synchronized (this){
+            for(ReentrantLock lock: locks){
+                lock.lock();
+            }
+            try{
+                table = new AtomicReferenceArray<>(table.length());
+                resizing = null;
+                currentSize.reset();
+            }finally {
+                for(ReentrantLock lock: locks){
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return true if tab still receives writes, i.e. it has not been
+     * discarded by makeEmpty. Must be called holding a stripe lock.
+     */
+    private boolean isLive(AtomicReferenceArray<Node<AnyType>> tab){
+        Resize<AnyType> r = resizing;
+        return tab == table || (r != null && tab == r.nextTable);
+    }
+
+    /**
+     * Start doubling tab if it is still current and over the load limit.
+     */
+    private void maybeStartResize(AtomicReferenceArray<Node<AnyType>> tab){
+        int n = tab.length();
+        if(resizing != null || n >= MAXIMUM_CAPACITY || currentSize.sum() <= n * MAX_LOAD){
+            return;
+        }
+        synchronized (this){
+            if(resizing == null && table == tab){
+                resizing = new Resize<>(tab, new AtomicReferenceArray<Node<AnyType>>(n * 2));
+            }
+        }
+        helpResize();
+    }
+
+    /**
+     * Migrate at most TRANSFER_STRIDE buckets of the resize in progress, if any.
+     */
+    private void helpResize(){
+        Resize<AnyType> r = resizing;
+        if(r == null){
+            return;
+        }
+        int n = r.oldTable.length();
+        int start = r.nextBucket.getAndAdd(TRANSFER_STRIDE);
+        if(start >= n){
+            return;
+        }
+        int end = Math.min(start + TRANSFER_STRIDE, n);
+        for(int i = start; i < end; i++){
+            transferBucket(r, i);
+        }
+        if(r.migrated.addAndGet(end - start) == n){
+            synchronized (this){
+                if(resizing == r){
+                    table = r.nextTable;
+                    resizing = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Split bucket i of the old table into buckets i and i + n of the new one,
+     * then leave a forwarding node behind. The old chain is copied rather than
+     * relinked so that concurrent readers still walking it are unaffected.
+     */
+    private void transferBucket(Resize<AnyType> r, int i){
+        int n = r.oldTable.length();
+        ReentrantLock lock = locks[i & stripeMask];
+        lock.lock();
+        try{
+            Node<AnyType> lo = null, hi = null;
+            for(Node<AnyType> e = r.oldTable.get(i); e != null; e = e.next){
+                if((e.hash & n) == 0){
+                    lo = new Node<>(e.hash, e.element, lo);
+                }else {
+                    hi = new Node<>(e.hash, e.element, hi);
+                }
+            }
+            r.nextTable.set(i, lo);
+            r.nextTable.set(i + n, hi);
+            r.oldTable.set(i, r.forward);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private static int spread(int h){
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    }
+
+    /**
+     * Internal method to find a power of two at least as large as n.
+     * @param n the starting number (must be positive).
+     * @return a power of two larger than or equal to n.
+     */
+    private static int tableSizeFor(int n){
+        if(n >= MAXIMUM_CAPACITY){
+            return MAXIMUM_CAPACITY;
+        }
+        int size = 1;
+        while (size < n){
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static class Node<AnyType>{
+        final int hash;
+        final AnyType element;
+        volatile Node<AnyType> next;
+
+        Node(int h, AnyType e, Node<AnyType> n){
+            hash = h;
+            element = e;
+            next = n;
+        }
+    }
+
+    private static class ForwardingNode<AnyType> extends Node<AnyType>{
+        final AtomicReferenceArray<Node<AnyType>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<AnyType>> tab){
+            super(MOVED, null, null);
+            nextTable = tab;
+        }
+    }
+
+    /**
+     * Bookkeeping for one doubling of the table.
+     */
+    private static class Resize<AnyType>{
+        final AtomicReferenceArray<Node<AnyType>> oldTable;
+        final AtomicReferenceArray<Node<AnyType>> nextTable;
+        final ForwardingNode<AnyType> forward;
+        final AtomicInteger nextBucket = new AtomicInteger();  // Next bucket to claim
+        final AtomicInteger migrated = new AtomicInteger();    // Buckets done
+
+        Resize(AtomicReferenceArray<Node<AnyType>> o, AtomicReferenceArray<Node<AnyType>> n){
+            oldTable = o;
+            nextTable = n;
+            forward = new ForwardingNode<>(n);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentSeparateChainingHashTable<Integer> H = new ConcurrentSeparateChainingHashTable<>();
+        long startTime = System.currentTimeMillis();
+
+        final int NUMS = 2000000;
+        final int GAP = 37;
+
+        System.out.println("Checking...(no more output means success)");
+
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            H.insert(i);
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            H.remove(i);
+        }
+        for(int i = 2; i < NUMS; i += 2){
+            if(!H.contains(i)){
+                System.out.println("Find fails " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            if(H.contains(i)){
+                System.out.println("OOPS!!!" + i);
+            }
+        }
+        long endTime = System.currentTimeMillis();
+        System.out.println("Elapsed time:" + (endTime - startTime));
+
+        // Scaling: 80% contains, 10% insert, 10% remove over a shared table,
+        // compared with SeparateChainingHashTable behind one global lock.
+        final int OPS = 2000000;
+        final int KEYS = 1 << 20;
+        for(int threads = 1; threads <= 32; threads *= 2){
+            ConcurrentSeparateChainingHashTable<Integer> concurrent = new ConcurrentSeparateChainingHashTable<>(16, 64);
+            final SeparateChainingHashTable<Integer> global = new SeparateChainingHashTable<>();
+            long concurrentTime = runWorkers(threads, OPS, KEYS, concurrent::insert, concurrent::remove, concurrent::contains);
+            long globalTime = runWorkers(threads, OPS, KEYS,
+                    x -> { synchronized (global){ global.insert(x); } return true; },
+                    x -> { synchronized (global){ global.remove(x); } return true; },
+                    x -> { synchronized (global){ return global.contains(x); } });
+            System.out.println(threads + " threads: striped " + (OPS * threads / Math.max(1, concurrentTime)) + " ops/ms, "
+                    + "global lock " + (OPS * threads / Math.max(1, globalTime)) + " ops/ms");
+        }
+    }
+
+    private interface Op{
+        boolean apply(Integer x);
+    }
+
+    private static long runWorkers(int threads, final int ops, final int keys,
+                                   final Op insert, final Op remove, final Op contains) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for(int i = 0; i < ops; i++){
+                    Integer key = r.nextInt(keys);
+                    int op = r.nextInt(10);
+                    if(op == 0){
+                        insert.apply(key);
+                    }else if(op == 1){
+                        remove.apply(key);
+                    }else {
+                        contains.apply(key);
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for(Thread w: workers){
+            w.start();
+        }
+        for(Thread w: workers){
+            w.join();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
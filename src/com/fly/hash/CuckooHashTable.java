@@ -9,20 +9,56 @@ import java.util.Random;
 public class CuckooHashTable<AnyType> {
 
     private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int BATCH_GROUP = 16;  // Keys hashed ahead of probing in containsAll
+    private static final int MIGRATE_STEP = 8;  // Old cells moved per operation while resizing
     private final HashFamily<? super AnyType> hashFunctions;
     private final  int numHashFunctions;
+    private final TableSizing sizing;
+    private TableSizing.Size tableSize;  // Length and hash reduction of array
     private AnyType[] array;  // The array of elements
     private int currentSize;  // The number of occupied cells
+    private final int[] hashes;  // Hash values of the key being probed
+    private final boolean incremental;  // Grow a few cells at a time
+    private AnyType[] oldArray;  // Table being drained by an incremental expand, else null
+    private TableSizing.Size oldSize;
+    private int migrated;        // Cells of oldArray already moved
 
     public CuckooHashTable(HashFamily<? super AnyType> hf){
         this(hf, DEFAULT_TABLE_SIZE);
     }
 
     public CuckooHashTable(HashFamily<? super AnyType> hf, int size){
-        allocateArray(nextPrime(size));
+        this(hf, size, false);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate initial size.
+     * @param incrementalResize if true, expanding keeps the old array
+     *        alongside the new one and every operation moves MIGRATE_STEP
+     *        of its cells. Rehashing with new hash functions still
+     *        rebuilds the whole table, after finishing any migration.
+     */
+    public CuckooHashTable(HashFamily<? super AnyType> hf, int size, boolean incrementalResize){
+        this(hf, size, incrementalResize, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param hf the hash family.
+     * @param size the approximate initial size.
+     * @param incrementalResize see above.
+     * @param sizing prime or power-of-two table lengths.
+     */
+    public CuckooHashTable(HashFamily<? super AnyType> hf, int size, boolean incrementalResize, TableSizing sizing){
+        this.sizing = sizing;
+        incremental = incrementalResize;
+        allocateArray(size);
         doClear();
         hashFunctions = hf;
         numHashFunctions = hf.getNumberOfFunctions();
+        hashes = new int[numHashFunctions];
     }
 
     private Random r = new Random();
@@ -32,15 +68,24 @@ public class CuckooHashTable<AnyType> {
 
     private int rehashes = 0;
 
-    private boolean insertHelper1(AnyType x){
+    /**
+     * Cuckoo insertion of x, which must not be present.
+     * @param hashed true if hashes already holds the hash values of x under
+     *        the current functions, as findPos leaves them.
+     */
+    private boolean insertHelper1(AnyType x, boolean hashed){
         final int COUNT_LIMIT = 100;
         while (true){
             int lastPos = -1;
             int pos;
 
             for(int count = 0; count < COUNT_LIMIT; count++){
+                if(!hashed){
+                    hashFunctions.hashAll(x, hashes);   // Once per key, not per probe
+                }
+                hashed = false;     // x is a kicked-out victim from here on
                 for(int i = 0; i < numHashFunctions; i++){
-                    pos = myhash(x, i);
+                    pos = position(hashes[i]);
                     if(array[pos] == null){
                         array[pos] = x;
                         currentSize++;
@@ -50,7 +95,7 @@ public class CuckooHashTable<AnyType> {
                 // none of the spots are available. Kick out a random one
                 int i = 0;
                 do{
-                    pos = myhash(x, r.nextInt(numHashFunctions));
+                    pos = position(hashes[r.nextInt(numHashFunctions)]);
                 }while (pos == lastPos && i++ < 5);
                 AnyType tmp = array[lastPos = pos];
                 array[pos] = x;
@@ -93,36 +138,134 @@ public class CuckooHashTable<AnyType> {
      * @param x the item to insert.
      */
     public boolean insert(AnyType x){
-        if(contains(x)){
+        migrate(MIGRATE_STEP);
+        if(findPos(x) != -1 || oldPos(x) != -1){
             return false;
         }
+        // findPos has left the hash values of x in hashes, unless expand
+        // reinserts other items, or new functions are drawn, after it
+        boolean hashed = true;
         if(currentSize >= array.length * MAX_LOAD){
             expand();
+            hashed = false;
         }
-        return insertHelper1(x);
+        return insertHelper1(x, hashed);
     }
 
-    private int myhash(AnyType x, int which){
-        int hasVal = hashFunctions.hash(x, which);
-        hasVal %= array.length;
-        if(hasVal < 0){
-            hasVal += array.length;
+    /**
+     * Insert a batch of items. The table is grown once up front
+     * from the batch size instead of expanding repeatedly.
+     * @param batch the items to insert.
+     * @return the number of items that were not already present.
+     */
+    public int insertAll(AnyType[] batch){
+        migrate(Integer.MAX_VALUE);
+        if(currentSize + batch.length >= array.length * MAX_LOAD){
+            rehash((int)((currentSize + batch.length) / MAX_LOAD) + 1);
         }
-        return hasVal;
+        int inserted = 0;
+        for(AnyType x: batch){
+            if(insert(x)){
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Look up a batch of items. All candidate positions of a group of
+     * BATCH_GROUP items are computed before any of them is probed.
+     * @param batch the items to search for.
+     * @param results set so that results[i] tells whether batch[i] is present.
+     * @return the number of items found.
+     */
+    public int containsAll(AnyType[] batch, boolean[] results){
+        // As much migration as the same number of contains calls, no more;
+        // items not yet moved are found in the old table
+        migrate((int) Math.min(Integer.MAX_VALUE, (long) MIGRATE_STEP * batch.length));
+        int[] positions = new int[BATCH_GROUP * numHashFunctions];
+        int found = 0;
+        for(int start = 0; start < batch.length; start += BATCH_GROUP){
+            int end = Math.min(start + BATCH_GROUP, batch.length);
+            for(int i = start, p = 0; i < end; i++){
+                hashFunctions.hashAll(batch[i], hashes);
+                for(int f = 0; f < numHashFunctions; f++){
+                    positions[p++] = position(hashes[f]);
+                }
+            }
+            for(int i = start, p = 0; i < end; i++, p += numHashFunctions){
+                results[i] = false;
+                for(int f = 0; f < numHashFunctions; f++){
+                    AnyType item = array[positions[p + f]];
+                    if(item != null && item.equals(batch[i])){
+                        results[i] = true;
+                        break;
+                    }
+                }
+                if(!results[i] && oldArray != null){
+                    hashFunctions.hashAll(batch[i], hashes);    // oldPos reads hashes
+                    results[i] = oldPos(batch[i]) != -1;
+                }
+                if(results[i]){
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int myhash(AnyType x, int which){
+        return position(hashFunctions.hash(x, which));
+    }
+
+    /**
+     * Reduce a raw hash value to a table index.
+     */
+    private int position(int hasVal){
+        return tableSize.index(hasVal);
     }
 
     private void expand(){
-        rehash((int)(array.length / MAX_LOAD));
+        if(incremental){
+            migrate(Integer.MAX_VALUE);   // Normally already finished
+            oldArray = array;
+            oldSize = tableSize;
+            migrated = 0;
+            allocateArray((int)(oldArray.length / MAX_LOAD));
+        }else {
+            rehash((int)(array.length / MAX_LOAD));
+        }
+    }
+
+    /**
+     * Move up to cells cells of oldArray into the current table.
+     * Each cell is cleared before its item is reinserted, so a nested
+     * expand or rehash triggered by that insertion sees consistent state.
+     */
+    private void migrate(int cells){
+        for( ; cells > 0 && oldArray != null; cells--){
+            AnyType item = oldArray[migrated];
+            oldArray[migrated++] = null;
+            if(migrated == oldArray.length){
+                oldArray = null;
+            }
+            if(item != null){
+                currentSize--;    // Counted again when reinserted
+                insertHelper1(item, false);
+            }
+        }
     }
 
     private void rehash(){
+        migrate(Integer.MAX_VALUE);   // New functions invalidate oldArray positions
         hashFunctions.generateNewFunctions();
         rehash(array.length);
     }
 
     private void rehash(int newLength){
+        migrate(Integer.MAX_VALUE);
         AnyType[] oldArray = array;  // Create a new double-sized, empty table
-        allocateArray(nextPrime(newLength));
+        allocateArray(newLength);
         currentSize = 0;
         //Copy table over
         for(AnyType str: oldArray){
@@ -154,8 +297,9 @@ public class CuckooHashTable<AnyType> {
      * @return the position where the search terminates, or -1 if not found.
      */
     private int findPos(AnyType x){
+        hashFunctions.hashAll(x, hashes);
         for (int i = 0; i < numHashFunctions; i++) {
-            int pos = myhash(x, i);
+            int pos = position(hashes[i]);
             if(array[pos] != null && array[pos].equals(x)){
                 return pos;
             }
@@ -163,16 +307,41 @@ public class CuckooHashTable<AnyType> {
         return -1;
     }
 
+    /**
+     * Search the not yet migrated part of oldArray.
+     * Must follow findPos(x), whose hash values it reuses.
+     * @return the position of x in oldArray, or -1 if not there.
+     */
+    private int oldPos(AnyType x){
+        if(oldArray == null){
+            return -1;
+        }
+        for (int i = 0; i < numHashFunctions; i++) {
+            int pos = oldSize.index(hashes[i]);
+            if(oldArray[pos] != null && oldArray[pos].equals(x)){
+                return pos;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Remove from the hash table.
      * @param x the item to remove.
      * @return true if item was found and removed
      */
     public boolean remove(AnyType x){
+        migrate(MIGRATE_STEP);
         int pos = findPos(x);
         if(pos != -1){
             array[pos] = null;
             currentSize--;
+            return true;
+        }
+        pos = oldPos(x);
+        if(pos != -1){
+            oldArray[pos] = null;
+            currentSize--;
         }
         return pos != -1;
     }
@@ -183,7 +352,8 @@ public class CuckooHashTable<AnyType> {
      * @return the matching item.
      */
     public boolean contains(AnyType x){
-        return findPos(x) != -1;
+        migrate(MIGRATE_STEP);
+        return findPos(x) != -1 || oldPos(x) != -1;
     }
 
     /**
@@ -195,6 +365,7 @@ public class CuckooHashTable<AnyType> {
 
     private void doClear(){
         currentSize = 0;
+        oldArray = null;
         for(int i = 0; i < array.length; i++){
             array[i] = null;
         }
@@ -205,43 +376,8 @@ public class CuckooHashTable<AnyType> {
      * @param arraySize the size of the array.
      */
     private void allocateArray(int arraySize){
-        array = (AnyType[]) new Object[arraySize];
-    }
-
-    /**
-     * Internal method to find a prime number at least as large as n.
-     * @param n the starting number (must be positive).
-     * @return a prime number larger than or equal to n.
-     */
-    protected static int nextPrime(int n){
-        if(n % 2 == 0){
-            n++;
-        }
-        for(; !isPrime(n); n += 2){
-            ;
-        }
-        return n;
-    }
-
-    /**
-     * Internal method to test if a number is prime.
-     * Not an efficient algorithm.
-     * @param n the number to test.
-     * @return the result of the test.
-     */
-    private static boolean isPrime(int n){
-        if(n == 2 || n == 3){
-            return true;
-        }
-        if(n == 1 || n % 2 == 0){
-            return false;
-        }
-        for(int i = 3; i * i <= n; i += 2){
-            if(n % i == 0){
-                return false;
-            }
-        }
-        return true;
+        tableSize = sizing.sizeFor(arraySize);
+        array = (AnyType[]) new Object[tableSize.length];
     }
 
     public static void main(String[] args) {
@@ -254,16 +390,22 @@ public class CuckooHashTable<AnyType> {
         System.out.println("Checking...(no more output means success)");
 
         for(int att = 0; att < ATTEMPTS; att++){
-            System.out.println("ATTEMPTS: " + att);
+            boolean incremental = att % 2 == 1;
+            System.out.println("ATTEMPTS: " + att + (incremental ? " (incremental resize)" : ""));
 
-            CuckooHashTable<String> H = new CuckooHashTable<String>(new StringHashFamily(3));
+            CuckooHashTable<String> H = new CuckooHashTable<String>(new StringHashFamily(3), DEFAULT_TABLE_SIZE, incremental);
 
             long startTime = System.currentTimeMillis();
+            long maxInsert = 0;
             for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
-                H.insert(" " + i);
+                String x = " " + i;
+                long t = System.nanoTime();
+                H.insert(x);
+                maxInsert = Math.max(maxInsert, System.nanoTime() - t);
             }
+            System.out.println("Slowest insert: " + maxInsert / 1000 + "us");
             for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
-                if(H.insert(" " + i));{
+                if(H.insert(" " + i)){
                     System.out.println("OOPS!!!" + i);
                 }
             }
@@ -0,0 +1,145 @@
+package com.fly.hash;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * String hash family that derives every function from one 64-bit hash.
+ * The string is read once, four chars per multiply, and function i is
+ * h1 + i * h2 where h1 and h2 are the two halves of the 64-bit value.
+ */
+public class DoubleHashStringFamily implements HashFamily<String> {
+    private static final long M = 0x9E3779B97F4A7C15L;
+
+    private final int numFunctions;
+    private final Random r = new Random();
+    private long seed;
+
+    public DoubleHashStringFamily(int d){
+        numFunctions = d;
+        generateNewFunctions();
+    }
+
+    public int getNumberOfFunctions(){
+        return numFunctions;
+    }
+
+    public void generateNewFunctions(){
+        seed = r.nextLong();
+    }
+
+    public int hash(String x, int which){
+        long h = hash64(x);
+        return (int) h + which * ((int)(h >>> 32) | 1);
+    }
+
+    @Override
+    public void hashAll(String x, int[] out){
+        long h = hash64(x);
+        int h1 = (int) h;
+        int h2 = (int)(h >>> 32) | 1;   // Odd, so successive functions differ
+        for(int i = 0; i < out.length; i++){
+            out[i] = h1 + i * h2;
+        }
+    }
+
+    /**
+     * Seeded 64-bit hash of x, consuming four chars per step.
+     */
+    private long hash64(String x){
+        final int len = x.length();
+        long h = seed ^ len;
+        int c = 0;
+        for( ; c + 4 <= len; c += 4){
+            long k = x.charAt(c)
+                    | (long) x.charAt(c + 1) << 16
+                    | (long) x.charAt(c + 2) << 32
+                    | (long) x.charAt(c + 3) << 48;
+            h = (h ^ k) * M;
+            h ^= h >>> 29;
+        }
+        for( ; c < len; c++){
+            h = (h ^ x.charAt(c)) * M;
+        }
+        // Final avalanche (MurmurHash3 fmix64)
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static void main(String[] args) {
+        final int NUMS = 2000000;
+        final int D = 3;
+        final int ROUNDS = 5;
+        String[] keys = new String[NUMS];
+        for(int i = 0; i < NUMS; i++){
+            keys[i] = "http://example.com/resource/" + i;
+        }
+        // Shuffle so that table probes are not artificially sequential
+        Collections.shuffle(Arrays.asList(keys));
+
+        StringHashFamily perFunction = new StringHashFamily(D);
+        DoubleHashStringFamily doubleHash = new DoubleHashStringFamily(D);
+        int[] out = new int[D];
+
+        for(int round = 0; round < ROUNDS; round++){
+            int sink = 0;
+            long start = System.currentTimeMillis();
+            for(String k: keys){
+                for(int i = 0; i < D; i++){
+                    sink += perFunction.hash(k, i);
+                }
+            }
+            long perCall = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            for(String k: keys){
+                perFunction.hashAll(k, out);
+                sink += out[D - 1];
+            }
+            long onePass = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            for(String k: keys){
+                doubleHash.hashAll(k, out);
+                sink += out[D - 1];
+            }
+            long derived = System.currentTimeMillis() - start;
+
+            System.out.println("hash() x" + D + ": " + perCall + "ms, StringHashFamily.hashAll: " + onePass
+                    + "ms, DoubleHashStringFamily.hashAll: " + derived + "ms (" + sink + ")");
+        }
+
+        for(int round = 0; round < ROUNDS; round++){
+            long start = System.currentTimeMillis();
+            CuckooHashTable<String> a = new CuckooHashTable<>(new StringHashFamily(D));
+            for(String k: keys){
+                a.insert(k);
+            }
+            for(String k: keys){
+                if(!a.contains(k)){
+                    System.out.println("Find fails " + k);
+                }
+            }
+            long multiplier = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            CuckooHashTable<String> b = new CuckooHashTable<>(new DoubleHashStringFamily(D));
+            for(String k: keys){
+                b.insert(k);
+            }
+            for(String k: keys){
+                if(!b.contains(k)){
+                    System.out.println("Find fails " + k);
+                }
+            }
+            long derived = System.currentTimeMillis() - start;
+            System.out.println("CuckooHashTable insert+contains: StringHashFamily " + multiplier
+                    + "ms, DoubleHashStringFamily " + derived + "ms");
+        }
+    }
+}
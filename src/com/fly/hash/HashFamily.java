@@ -7,4 +7,16 @@ public interface HashFamily<AnyType> {
     int hash(AnyType x, int which);
     int getNumberOfFunctions();
     void generateNewFunctions();
+
+    /**
+     * Compute every function's hash of x at once.
+     * Families that can share work between functions should override this.
+     * @param x the item to hash.
+     * @param out receives hash(x, i) in out[i]; length getNumberOfFunctions().
+     */
+    default void hashAll(AnyType x, int[] out){
+        for(int i = 0; i < out.length; i++){
+            out[i] = hash(x, i);
+        }
+    }
 }
@@ -0,0 +1,260 @@
+package com.fly.hash;
+
+/**
+ * Quadratic probing hash set specialized for int keys.
+ * Keys live in a flat int array; a bitset records which cells are
+ * occupied and a sentinel key marks deleted cells, so no HashEntry
+ * objects or boxed Integers are allocated.
+ * The sentinel value itself is still a legal key; it is tracked
+ * outside the table.
+ */
+public class IntHashSet {
+
+    private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int TOMBSTONE = Integer.MIN_VALUE;  // Key stored in deleted cells
+
+    private final TableSizing sizing;
+    private TableSizing.Size tableSize;  // Length and hash reduction of keys
+    private int[] keys;          // The key array
+    private long[] used;         // Bitset: cell holds a key or a tombstone
+    private int occupied;        // The number of occupied cells
+    private int theSize;         // Current size
+    private boolean hasTombstoneKey;  // True if TOMBSTONE itself is in the set
+
+    /**
+     * Construct the hash set.
+     */
+    public IntHashSet(){
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Construct the hash set.
+     * @param size the approximate initial size.
+     */
+    public IntHashSet(int size){
+        this(size, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash set.
+     * @param size the approximate initial size.
+     * @param sizing prime lengths probed with square offsets, or
+     *        power-of-two lengths probed with triangular offsets.
+     */
+    public IntHashSet(int size, TableSizing sizing){
+        this.sizing = sizing;
+        allocateArray(size);
+        doClear();
+    }
+
+    /**
+     * Insert into the hash set. If the item is
+     * already present, do nothing.
+     * @param x the item to insert.
+     * @return true if x was inserted.
+     */
+    public boolean insert(int x){
+        if(x == TOMBSTONE){
+            if(hasTombstoneKey){
+                return false;
+            }
+            hasTombstoneKey = true;
+            theSize++;
+            return true;
+        }
+
+        int offset = 1;
+        int currentPos = myhash(x);
+        int freePos = -1;
+        while (isUsed(currentPos)){
+            if(keys[currentPos] == x){
+                return false;
+            }
+            if(freePos == -1 && keys[currentPos] == TOMBSTONE){
+                freePos = currentPos;   // Reuse the first deleted cell
+            }
+            currentPos += offset;    // Compute ith probe
+            offset += tableSize.probeStep();
+            if(currentPos >= keys.length){
+                currentPos -= keys.length;
+            }
+        }
+        if(freePos == -1){
+            freePos = currentPos;
+            setUsed(freePos);
+            ++occupied;
+        }
+        keys[freePos] = x;
+        theSize++;
+        if(occupied > keys.length / 2){
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Remove from the hash set.
+     * @param x the item to remove.
+     * @return true if item removed.
+     */
+    public boolean remove(int x){
+        if(x == TOMBSTONE){
+            if(!hasTombstoneKey){
+                return false;
+            }
+            hasTombstoneKey = false;
+            theSize--;
+            return true;
+        }
+        int currentPos = findPos(x);
+        if(isUsed(currentPos)){
+            keys[currentPos] = TOMBSTONE;
+            theSize--;
+            return true;
+        }else {
+            return false;
+        }
+    }
+
+    /**
+     * Find an item in the hash set.
+     * @param x the item to search for.
+     * @return true if the item is present.
+     */
+    public boolean contains(int x){
+        if(x == TOMBSTONE){
+            return hasTombstoneKey;
+        }
+        return isUsed(findPos(x));
+    }
+
+    /**
+     * Get current size.
+     * @return the size.
+     */
+    public int size(){
+        return theSize;
+    }
+
+    /**
+     * Get length of internal table.
+     * @return the size.
+     */
+    public int capacity(){
+        return keys.length;
+    }
+
+    /**
+     * Make the hash set logically empty.
+     */
+    public void makeEmpty(){
+        doClear();
+    }
+
+    /**
+     * Expand the hash set.
+     */
+    private void rehash(){
+        int[] oldKeys = keys;
+        long[] oldUsed = used;
+        boolean oldHasTombstoneKey = hasTombstoneKey;
+        // Create a new double-sized, empty table
+        allocateArray(2 * oldKeys.length);
+        doClear();
+
+        for(int i = 0; i < oldKeys.length; i++){
+            if((oldUsed[i >>> 6] & (1L << i)) != 0 && oldKeys[i] != TOMBSTONE){
+                insert(oldKeys[i]);
+            }
+        }
+        if(oldHasTombstoneKey){
+            insert(TOMBSTONE);
+        }
+    }
+
+    /**
+     * Probe for x, which must not be TOMBSTONE.
+     * @return the cell holding x, or the first never-used cell.
+     */
+    private int findPos(int x){
+        int offset = 1;
+        int currentPos = myhash(x);
+        while (isUsed(currentPos) && keys[currentPos] != x){
+            currentPos += offset;    // Compute ith probe
+            offset += tableSize.probeStep();
+            if(currentPos >= keys.length){
+                currentPos -= keys.length;
+            }
+        }
+        return currentPos;
+    }
+
+    private boolean isUsed(int pos){
+        return (used[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    private void setUsed(int pos){
+        used[pos >>> 6] |= 1L << pos;
+    }
+
+    private void doClear(){
+        occupied = 0;
+        theSize = 0;
+        hasTombstoneKey = false;
+        for(int i = 0; i < used.length; i++){
+            used[i] = 0;
+        }
+    }
+
+    private int myhash(int x){
+        return tableSize.index(x);
+    }
+
+    /**
+     * Internal method to allocate the key array and its bitset.
+     * @param arraySize the size of the array.
+     */
+    private void allocateArray(int arraySize){
+        tableSize = sizing.sizeFor(arraySize);
+        keys = new int[tableSize.length];
+        used = new long[(keys.length + 63) >>> 6];
+    }
+
+    public static void main(String[] args) {
+        IntHashSet H = new IntHashSet();
+        long startTime = System.currentTimeMillis();
+
+        final int NUMS = 2000000;
+        final int GAP = 37;
+
+        System.out.println("Checking...(no more output means success)");
+
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            H.insert(i);
+        }
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            if(H.insert(i)){
+                System.out.println("OOPS!!! " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            H.remove(i);
+        }
+        for(int i = 2; i < NUMS; i += 2){
+            if(!H.contains(i)){
+                System.out.println("Find fails " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            if(H.contains(i)){
+                System.out.println("OOPS!!! " + i);
+            }
+        }
+        if(!H.insert(Integer.MIN_VALUE) || !H.contains(Integer.MIN_VALUE) || !H.remove(Integer.MIN_VALUE)){
+            System.out.println("OOPS!!! sentinel key");
+        }
+        long endTime = System.currentTimeMillis();
+        System.out.println("Elapsed time: " + (endTime - startTime));
+    }
+}
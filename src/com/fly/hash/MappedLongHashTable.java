@@ -0,0 +1,357 @@
+package com.fly.hash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Quadratic probing hash table from long keys to long values, stored in a
+ * memory-mapped file instead of on the heap.
+ * A table built once with create can be reopened with open in the time it
+ * takes to map the file, and several processes can map it read-only.
+ * The capacity is fixed when the file is created; insert throws
+ * IllegalStateException once half of the cells have ever been used.
+ *
+ * File layout: a 32-byte header (magic, capacity, size, occupied), then one
+ * state byte per cell, then the keys, then the values, all 8-byte aligned.
+ */
+public class MappedLongHashTable implements Closeable {
+
+    private static final long MAGIC = 0x464C594D48415348L;  // "FLYMHASH"
+    private static final int HEADER_SIZE = 32;
+    private static final int SIZE_OFFSET = 16;
+    private static final int OCCUPIED_OFFSET = 24;
+    private static final int CHUNK_BITS = 30;   // Files are mapped in 1GB chunks
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private static final byte EMPTY = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte DELETED = 2;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] chunks;
+    private final boolean readOnly;
+    private final int capacity;
+    private final long keysOffset;
+    private final long valuesOffset;
+    private int theSize;
+    private int occupied;
+
+    /**
+     * Map raf and check that it holds a whole table. raf is closed if it does not.
+     */
+    private MappedLongHashTable(RandomAccessFile raf, boolean ro) throws IOException {
+        file = raf;
+        readOnly = ro;
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            FileChannel.MapMode mode = ro ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            chunks = new MappedByteBuffer[(int)((length + CHUNK_MASK) >>> CHUNK_BITS)];
+            for(int i = 0; i < chunks.length; i++){
+                long pos = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(mode, pos, Math.min(1L << CHUNK_BITS, length - pos));
+            }
+            if(length < HEADER_SIZE || getLong(0) != MAGIC){
+                throw new IOException("Not a mapped hash table file");
+            }
+            long cells = getLong(8);
+            long size = getLong(SIZE_OFFSET);
+            long used = getLong(OCCUPIED_OFFSET);
+            if(cells <= 0 || cells > Integer.MAX_VALUE || size < 0 || used < size || used > cells){
+                throw new IOException("Corrupt mapped hash table header: capacity " + cells
+                        + ", size " + size + ", occupied " + used);
+            }
+            capacity = (int) cells;
+            theSize = (int) size;
+            occupied = (int) used;
+            keysOffset = align8(HEADER_SIZE + (long) capacity);
+            valuesOffset = keysOffset + 8L * capacity;
+            if(length < valuesOffset + 8L * capacity){
+                throw new IOException("Mapped hash table file truncated: " + length + " bytes, "
+                        + (valuesOffset + 8L * capacity) + " needed");
+            }
+        }catch (IOException | RuntimeException e){
+            try {
+                raf.close();
+            }catch (IOException suppressed){
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Create an empty table file, replacing any existing file.
+     * @param f the file to create.
+     * @param maxSize the largest number of keys the table must hold.
+     * @return the table, open for reading and writing.
+     */
+    public static MappedLongHashTable create(File f, int maxSize) throws IOException {
+        int capacity = TableSizing.PRIME.sizeFor(2 * maxSize + 1).length;
+        long keysOffset = align8(HEADER_SIZE + (long) capacity);
+        long length = keysOffset + 16L * capacity;
+        try(RandomAccessFile raf = new RandomAccessFile(f, "rw")){
+            raf.setLength(0);
+            raf.setLength(length);   // Zero-filled, so every cell starts EMPTY
+            raf.writeLong(MAGIC);
+            raf.writeLong(capacity);
+            raf.writeLong(0);
+            raf.writeLong(0);
+        }
+        return open(f, false);
+    }
+
+    /**
+     * Map an existing table file.
+     * @param f the file written by create.
+     * @param readOnly true to map the file read-only.
+     * @return the table.
+     */
+    public static MappedLongHashTable open(File f, boolean readOnly) throws IOException {
+        return new MappedLongHashTable(new RandomAccessFile(f, readOnly ? "r" : "rw"), readOnly);
+    }
+
+    /**
+     * Insert into the hash table. If the key is
+     * already present, do nothing.
+     * @param key the key to insert.
+     * @param value the value stored with key.
+     * @return true if the key was inserted.
+     */
+    public boolean insert(long key, long value){
+        checkWritable();
+        int offset = 1;
+        int currentPos = myhash(key);
+        int freePos = -1;
+        byte state;
+        while ((state = getState(currentPos)) != EMPTY){
+            if(state == ACTIVE && getLong(keysOffset + 8L * currentPos) == key){
+                return false;
+            }
+            if(freePos == -1 && state == DELETED){
+                freePos = currentPos;   // Reuse the first deleted cell
+            }
+            currentPos += offset;    // Compute ith probe
+            offset += 2;
+            if(currentPos >= capacity){
+                currentPos -= capacity;
+            }
+        }
+        if(freePos != -1){
+            currentPos = freePos;
+        }else {
+            if(occupied + 1 > capacity / 2){
+                throw new IllegalStateException("Mapped hash table is full: capacity " + capacity);
+            }
+            putLong(OCCUPIED_OFFSET, ++occupied);
+        }
+        putLong(keysOffset + 8L * currentPos, key);
+        putLong(valuesOffset + 8L * currentPos, value);
+        setState(currentPos, ACTIVE);
+        putLong(SIZE_OFFSET, ++theSize);
+        return true;
+    }
+
+    /**
+     * Remove from the hash table.
+     * @param key the key to remove.
+     * @return true if the key was removed.
+     */
+    public boolean remove(long key){
+        checkWritable();
+        int currentPos = findPos(key);
+        if(isActive(currentPos)){
+            setState(currentPos, DELETED);
+            putLong(SIZE_OFFSET, --theSize);
+            return true;
+        }else {
+            return false;
+        }
+    }
+
+    /**
+     * Find a key in the hash table.
+     * @param key the key to search for.
+     * @return true if the key is present.
+     */
+    public boolean contains(long key){
+        return isActive(findPos(key));
+    }
+
+    /**
+     * Look up the value stored with a key.
+     * @param key the key to search for.
+     * @param notFound the value to return if key is absent.
+     * @return the value, or notFound.
+     */
+    public long get(long key, long notFound){
+        int currentPos = findPos(key);
+        return isActive(currentPos) ? getLong(valuesOffset + 8L * currentPos) : notFound;
+    }
+
+    /**
+     * Get current size.
+     * @return the size.
+     */
+    public int size(){
+        return theSize;
+    }
+
+    /**
+     * Get length of internal table.
+     * @return the number of cells.
+     */
+    public int capacity(){
+        return capacity;
+    }
+
+    /**
+     * Write any changes back to the file.
+     */
+    public void force(){
+        if(!readOnly){
+            for(MappedByteBuffer chunk: chunks){
+                chunk.force();
+            }
+        }
+    }
+
+    /**
+     * Flush and close the file. The mapping itself is released
+     * when the table is garbage collected.
+     */
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    private void checkWritable(){
+        if(readOnly){
+            throw new UnsupportedOperationException("Mapped hash table is read-only");
+        }
+    }
+
+    private boolean isActive(int currentPos){
+        return getState(currentPos) == ACTIVE;
+    }
+
+    /**
+     * Probe for key; deleted cells are skipped, not reused.
+     * @return the cell holding key, or the first empty cell.
+     */
+    private int findPos(long key){
+        int offset = 1;
+        int currentPos = myhash(key);
+        byte state;
+        while ((state = getState(currentPos)) != EMPTY
+                && (state == DELETED || getLong(keysOffset + 8L * currentPos) != key)){
+            currentPos += offset;    // Compute ith probe
+            offset += 2;
+            if(currentPos >= capacity){
+                currentPos -= capacity;
+            }
+        }
+        return currentPos;
+    }
+
+    /**
+     * Keys are scrambled (MurmurHash3 fmix64) before reduction so that runs
+     * of consecutive keys do not form one long probe cluster. This is part
+     * of the file format: changing it invalidates existing files, which is
+     * why this table keeps a plain 64-bit remainder rather than the fastmod
+     * reduction of TableSizing.
+     */
+    private int myhash(long key){
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        int hashVal = (int)(key % capacity);
+        if(hashVal < 0){
+            hashVal += capacity;
+        }
+        return hashVal;
+    }
+
+    private byte getState(int pos){
+        long off = HEADER_SIZE + (long) pos;
+        return chunks[(int)(off >>> CHUNK_BITS)].get((int)(off & CHUNK_MASK));
+    }
+
+    private void setState(int pos, byte state){
+        long off = HEADER_SIZE + (long) pos;
+        chunks[(int)(off >>> CHUNK_BITS)].put((int)(off & CHUNK_MASK), state);
+    }
+
+    // Longs are 8-byte aligned and chunks are a multiple of 8 bytes,
+    // so a long never straddles two chunks.
+    private long getLong(long off){
+        return chunks[(int)(off >>> CHUNK_BITS)].getLong((int)(off & CHUNK_MASK));
+    }
+
+    private void putLong(long off, long value){
+        chunks[(int)(off >>> CHUNK_BITS)].putLong((int)(off & CHUNK_MASK), value);
+    }
+
+    private static long align8(long n){
+        return (n + 7) & ~7L;
+    }
+
+    public static void main(String[] args) throws IOException {
+        final int NUMS = 2000000;
+        final int GAP = 37;
+        File f = File.createTempFile("mapped-hash", ".tbl");
+        f.deleteOnExit();
+
+        System.out.println("Checking...(no more output means success)");
+
+        long startTime = System.currentTimeMillis();
+        try(MappedLongHashTable H = create(f, NUMS)){
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                H.insert(i, -i);
+            }
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                if(H.insert(i, 0)){
+                    System.out.println("OOPS!!! " + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                H.remove(i);
+            }
+        }
+        System.out.println("Build time: " + (System.currentTimeMillis() - startTime));
+
+        startTime = System.currentTimeMillis();
+        try(MappedLongHashTable H = open(f, true)){
+            System.out.println("Open time: " + (System.currentTimeMillis() - startTime));
+            for(int i = 2; i < NUMS; i += 2){
+                if(H.get(i, 0) != -i){
+                    System.out.println("Find fails " + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                if(H.contains(i)){
+                    System.out.println("OOPS!!! " + i);
+                }
+            }
+            if(H.size() != NUMS / 2 - 1){
+                System.out.println("OOPS!!! size " + H.size());
+            }
+        }
+        System.out.println("Elapsed time: " + (System.currentTimeMillis() - startTime));
+
+        // A truncated file must be refused when it is opened, not on a later probe
+        try(RandomAccessFile raf = new RandomAccessFile(f, "rw")){
+            raf.setLength(raf.length() / 2);
+        }
+        try(MappedLongHashTable H = open(f, true)){
+            System.out.println("OOPS!!! truncated file opened");
+        }catch (IOException expected){
+            // Expected
+        }
+        f.delete();
+    }
+}
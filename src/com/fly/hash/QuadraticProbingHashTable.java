@@ -7,9 +7,17 @@ package com.fly.hash;
 public class QuadraticProbingHashTable<AnyType> {
 
     private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final int BATCH_GROUP = 16;  // Keys hashed ahead of probing in containsAll
+    private static final int MIGRATE_STEP = 8;  // Old cells moved per operation while resizing
+    private final TableSizing sizing;
+    private TableSizing.Size tableSize;     // Length and hash reduction of array
     private HashEntry<AnyType>[] array; //元素数组
     private int occupied;      //The number of occupied cells
     private int theSize;       //当前大小
+    private final boolean incremental;      // Resize a few cells at a time
+    private HashEntry<AnyType>[] oldArray;  // Table being drained by an incremental resize, else null
+    private TableSizing.Size oldSize;
+    private int migrated;                   // Cells of oldArray already moved
 
     //构造哈希表
     public QuadraticProbingHashTable(){
@@ -21,6 +29,30 @@ public class QuadraticProbingHashTable<AnyType> {
      * @param size the approximate initial size.
      */
     public QuadraticProbingHashTable(int size){
+        this(size, false);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     * @param incrementalResize if true, growing the table keeps the old
+     *        array alongside the new one and every operation moves
+     *        MIGRATE_STEP of its cells, instead of copying all at once.
+     */
+    public QuadraticProbingHashTable(int size, boolean incrementalResize){
+        this(size, incrementalResize, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     * @param incrementalResize see above.
+     * @param sizing prime lengths probed with square offsets, or
+     *        power-of-two lengths probed with triangular offsets.
+     */
+    public QuadraticProbingHashTable(int size, boolean incrementalResize, TableSizing sizing){
+        this.sizing = sizing;
+        incremental = incrementalResize;
         allocateArray(size);
         doClear();
     }
@@ -32,8 +64,9 @@ public class QuadraticProbingHashTable<AnyType> {
      */
     public boolean insert(AnyType x){
         // Insert x as active
+        migrate(MIGRATE_STEP);
         int currentPos = findPos(x);
-        if(isActive(currentPos)){
+        if(isActive(currentPos) || oldPos(x) != -1){
             return false;
         }
         if(array[currentPos] == null){
@@ -47,20 +80,74 @@ public class QuadraticProbingHashTable<AnyType> {
         return true;
     }
 
+    /**
+     * Insert a batch of items. The table is resized once up front
+     * from the batch size instead of rehashing repeatedly.
+     * @param batch the items to insert.
+     * @return the number of items that were not already present.
+     */
+    public int insertAll(AnyType[] batch){
+        migrate(Integer.MAX_VALUE);
+        if(occupied + batch.length > array.length / 2){
+            rehash(2 * (theSize + batch.length) + 1);
+        }
+        int inserted = 0;
+        for(AnyType x: batch){
+            if(insert(x)){
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Look up a batch of items. Each group of BATCH_GROUP home positions is
+     * computed before any of them is probed, so the loads can overlap.
+     * @param batch the items to search for.
+     * @param results set so that results[i] tells whether batch[i] is present.
+     * @return the number of items found.
+     */
+    public int containsAll(AnyType[] batch, boolean[] results){
+        // As much migration as the same number of contains calls, no more;
+        // items not yet moved are found in the old table
+        migrate((int) Math.min(Integer.MAX_VALUE, (long) MIGRATE_STEP * batch.length));
+        int[] positions = new int[BATCH_GROUP];
+        int found = 0;
+        for(int start = 0; start < batch.length; start += BATCH_GROUP){
+            int end = Math.min(start + BATCH_GROUP, batch.length);
+            for(int i = start; i < end; i++){
+                positions[i - start] = myhash(batch[i]);
+            }
+            for(int i = start; i < end; i++){
+                results[i] = isActive(findPos(batch[i], positions[i - start])) || oldPos(batch[i]) != -1;
+                if(results[i]){
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
     /**
      * Remove from the hash table.
      * @param x the item to remove.
      * @return true if item removed
      */
     public boolean remove(AnyType x){
+        migrate(MIGRATE_STEP);
         int currentPos = findPos(x);
         if(isActive(currentPos)){
             array[currentPos].isActive = false;
             theSize--;
             return true;
-        }else {
-            return false;
         }
+        int oldPos = oldPos(x);
+        if(oldPos != -1){
+            oldArray[oldPos].isActive = false;
+            theSize--;
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -85,8 +172,9 @@ public class QuadraticProbingHashTable<AnyType> {
      * @return the matching item.
      */
     public boolean contains(AnyType x){
+        migrate(MIGRATE_STEP);
         int currentPos = findPos(x);
-        return isActive(currentPos);
+        return isActive(currentPos) || oldPos(x) != -1;
     }
 
     /**
@@ -100,9 +188,23 @@ public class QuadraticProbingHashTable<AnyType> {
      * Expand the hash table.
      */
     private void rehash(){
-        HashEntry<AnyType>[] oldArray = array;
         // Create a new double-sized, empty table
-        allocateArray(2 * oldArray.length);
+        if(incremental){
+            migrate(Integer.MAX_VALUE);   // Normally already finished
+            oldArray = array;
+            oldSize = tableSize;
+            migrated = 0;
+            allocateArray(2 * oldArray.length);
+            occupied = 0;
+        }else {
+            rehash(2 * array.length);
+        }
+    }
+
+    private void rehash(int newLength){
+        migrate(Integer.MAX_VALUE);
+        HashEntry<AnyType>[] oldArray = array;
+        allocateArray(newLength);
         occupied = 0;
         theSize = 0;
 
@@ -122,12 +224,55 @@ public class QuadraticProbingHashTable<AnyType> {
         return array[currentPos] != null && array[currentPos].isActive;
     }
 
+    /**
+     * Find x among the cells of oldArray that have not been migrated yet.
+     * @return the position of x in oldArray, or -1 if not there.
+     */
+    private int oldPos(AnyType x){
+        if(oldArray == null){
+            return -1;
+        }
+        int pos = findPos(oldArray, x, oldSize.index(x.hashCode()), oldSize.probeStep());
+        if(pos < migrated || oldArray[pos] == null || !oldArray[pos].isActive){
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * Move up to cells cells of oldArray into the current table.
+     * Migrated cells are left in place so that probe sequences through
+     * them still work; positions below migrated are simply ignored.
+     */
+    private void migrate(int cells){
+        for( ; cells > 0 && oldArray != null; cells--){
+            HashEntry<AnyType> entry = oldArray[migrated++];
+            if(entry != null && entry.isActive){
+                int currentPos = findPos(entry.element);
+                if(array[currentPos] == null){
+                    ++occupied;
+                }
+                array[currentPos] = entry;
+            }
+            if(migrated == oldArray.length){
+                oldArray = null;
+            }
+        }
+    }
+
     private int findPos(AnyType x){
+        return findPos(x, myhash(x));
+    }
+
+    private int findPos(AnyType x, int currentPos){
+        return findPos(array, x, currentPos, tableSize.probeStep());
+    }
+
+    private static <AnyType> int findPos(HashEntry<AnyType>[] array, AnyType x, int currentPos, int step){
         int offset = 1;
-        int currentPos = myhash(x);
         while (array[currentPos] != null && !array[currentPos].element.equals(x)){
             currentPos += offset;    // Compute ith probe
-            offset += 2;
+            offset += step;
             if(currentPos >= array.length){
                 currentPos -= array.length;
             }
@@ -137,18 +282,14 @@ public class QuadraticProbingHashTable<AnyType> {
 
     private  void doClear(){
         occupied = 0;
+        oldArray = null;
         for(int i = 0; i < array.length; i++){
             array[i] = null;
         }
     }
 
     private int myhash(AnyType x){
-        int hashVal = x.hashCode();
-        hashVal %= array.length;
-        if(hashVal < 0){
-            hashVal += array.length;
-        }
-        return  hashVal;
+        return tableSize.index(x.hashCode());
     }
 
     /**
@@ -156,43 +297,8 @@ public class QuadraticProbingHashTable<AnyType> {
      * @param arraySize the size of the array.
      */
     private void allocateArray(int arraySize){
-        array = new HashEntry[nextPrime(arraySize)];
-    }
-
-    /**
-     * Internal method to find a prime number at least as large as n.
-     * @param n the starting number (must be positive).
-     * @return a prime number larger than or equal to n.
-     */
-    private static int nextPrime(int n){
-        if(n % 2 == 0){
-            n++;
-        }
-        for(; !isPrime(n); n += 2){
-            ;
-        }
-        return n;
-    }
-
-    /**
-     * Internal method to test if a number is prime.
-     * Not an efficient algorithm.
-     * @param n the number to test.
-     * @return the result of the test.
-     */
-    private static boolean isPrime(int n){
-        if(n == 2 || n == 3){
-            return true;
-        }
-        if(n == 1 || n % 2 == 0){
-            return false;
-        }
-        for(int i = 3; i * i <= n; i += 2){
-            if(n % i == 0){
-                return false;
-            }
-        }
-        return true;
+        tableSize = sizing.sizeFor(arraySize);
+        array = new HashEntry[tableSize.length];
     }
 
     private  static class HashEntry<AnyType>{
@@ -210,36 +316,43 @@ public class QuadraticProbingHashTable<AnyType> {
     }
 
     public static void main(String[] args) {
-        QuadraticProbingHashTable<String> H = new QuadraticProbingHashTable<>();
-        long startTime = System.currentTimeMillis();
-
         final int NUMS = 2000000;
         final int GAP = 37;
 
         System.out.println("Checking...(no more output means sucess)");
 
-        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
-            H.insert(" " + i);
-        }
-        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
-            if(H.insert(" " + i)){
-                System.out.println("OOPS!!! " + i);
+        for(boolean incremental: new boolean[]{ false, true }){
+            QuadraticProbingHashTable<String> H = new QuadraticProbingHashTable<>(DEFAULT_TABLE_SIZE, incremental);
+            long startTime = System.currentTimeMillis();
+            long maxInsert = 0;
+
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                String x = " " + i;
+                long t = System.nanoTime();
+                H.insert(x);
+                maxInsert = Math.max(maxInsert, System.nanoTime() - t);
             }
-        }
-        for(int i = 1; i < NUMS; i += 2){
-            H.remove(" " + i);
-        }
-        for(int i = 2; i < NUMS; i += 2){
-            if(!H.contains(" " + i)){
-                System.out.println("Find fails " + i);
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                if(H.insert(" " + i)){
+                    System.out.println("OOPS!!! " + i);
+                }
             }
-        }
-        for(int i = 1; i < NUMS; i += 2){
-            if(H.contains(" " + i)){
-                System.out.println("OOPS!!! " + i);
+            for(int i = 1; i < NUMS; i += 2){
+                H.remove(" " + i);
+            }
+            for(int i = 2; i < NUMS; i += 2){
+                if(!H.contains(" " + i)){
+                    System.out.println("Find fails " + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                if(H.contains(" " + i)){
+                    System.out.println("OOPS!!! " + i);
+                }
             }
+            long endTime = System.currentTimeMillis();
+            System.out.println((incremental ? "Incremental" : "Stop-the-world") + " resize: elapsed time: " + (endTime - startTime)
+                    + ", slowest insert: " + maxInsert / 1000 + "us");
         }
-        long endTime = System.currentTimeMillis();
-        System.out.println("Elapsed time: " + (endTime - startTime));
     }
 }
@@ -0,0 +1,284 @@
+package com.fly.hash;
+
+
+/**
+ * Linear probing hash table with Robin Hood insertion.
+ * An item being inserted takes the cell of any resident that is closer to
+ * its own home cell, which keeps probe lengths short and uniform.
+ * remove shifts the following cluster back by one cell instead of leaving
+ * a deleted marker, so lookups do not slow down under insert/remove churn.
+ * Note that all "matching" is based on the equals method.
+ */
+public class RobinHoodHashTable<AnyType> {
+
+    private static final int DEFAULT_TABLE_SIZE = 101;
+    private static final double MAX_LOAD = 0.85;
+
+    private final TableSizing sizing;
+    private TableSizing.Size tableSize; // Length and hash reduction of array
+    private AnyType[] array;    // The array of elements
+    private int[] probes;       // 1 + distance from home cell; 0 for an empty cell
+    private int theSize;        // Current size
+
+    public RobinHoodHashTable(){
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     */
+    public RobinHoodHashTable(int size){
+        this(size, TableSizing.PRIME);
+    }
+
+    /**
+     * Construct the hash table.
+     * @param size the approximate initial size.
+     * @param sizing prime or power-of-two table lengths.
+     */
+    public RobinHoodHashTable(int size, TableSizing sizing){
+        this.sizing = sizing;
+        allocateArray(size);
+        doClear();
+    }
+
+    /**
+     * Insert into the hash table. If the item is
+     * already present, do nothing.
+     * @param x the item to insert.
+     * @return true if x was inserted.
+     */
+    public boolean insert(AnyType x){
+        if(findPos(x) != -1){
+            return false;
+        }
+        if(theSize + 1 > array.length * MAX_LOAD){
+            rehash();
+        }
+        insertHelper(x);
+        theSize++;
+        return true;
+    }
+
+    /**
+     * Place x, which is known to be absent. Whenever x has probed further
+     * than the resident of a cell, they trade places and the resident
+     * continues the search.
+     */
+    private void insertHelper(AnyType x){
+        int currentPos = myhash(x);
+        int probe = 1;
+        while (probes[currentPos] != 0){
+            if(probes[currentPos] < probe){
+                AnyType tmp = array[currentPos];
+                int tmpProbe = probes[currentPos];
+                array[currentPos] = x;
+                probes[currentPos] = probe;
+                x = tmp;
+                probe = tmpProbe;
+            }
+            currentPos = next(currentPos);
+            probe++;
+        }
+        array[currentPos] = x;
+        probes[currentPos] = probe;
+    }
+
+    /**
+     * Remove from the hash table using backward-shift deletion.
+     * @param x the item to remove.
+     * @return true if item removed.
+     */
+    public boolean remove(AnyType x){
+        int currentPos = findPos(x);
+        if(currentPos == -1){
+            return false;
+        }
+        // Pull each following displaced item one cell closer to home
+        int nextPos = next(currentPos);
+        while (probes[nextPos] > 1){
+            array[currentPos] = array[nextPos];
+            probes[currentPos] = probes[nextPos] - 1;
+            currentPos = nextPos;
+            nextPos = next(nextPos);
+        }
+        array[currentPos] = null;
+        probes[currentPos] = 0;
+        theSize--;
+        return true;
+    }
+
+    /**
+     * Find an item in the hash table.
+     * @param x the item to search for.
+     * @return true if the item is present.
+     */
+    public boolean contains(AnyType x){
+        return findPos(x) != -1;
+    }
+
+    /**
+     * Get current size.
+     * @return the size.
+     */
+    public int size(){
+        return theSize;
+    }
+
+    /**
+     * Get length of internal table.
+     * @return the size.
+     */
+    public int capacity(){
+        return array.length;
+    }
+
+    /**
+     * Longest successful probe sequence. Scans the table.
+     * @return the largest number of cells examined to find any item.
+     */
+    public int maxProbeLength(){
+        int max = 0;
+        for(int p: probes){
+            max = Math.max(max, p);
+        }
+        return max;
+    }
+
+    /**
+     * Average successful probe sequence. Scans the table.
+     * @return the mean number of cells examined to find an item.
+     */
+    public double meanProbeLength(){
+        long total = 0;
+        for(int p: probes){
+            total += p;
+        }
+        return theSize == 0 ? 0 : (double) total / theSize;
+    }
+
+    /**
+     * Make the hash table logically empty.
+     */
+    public void makeEmpty(){
+        doClear();
+    }
+
+    /**
+     * Expand the hash table.
+     */
+    private void rehash(){
+        AnyType[] oldArray = array;
+        // Create a new double-sized, empty table
+        allocateArray(2 * oldArray.length);
+        for(AnyType item: oldArray){
+            if(item != null){
+                insertHelper(item);
+            }
+        }
+    }
+
+    /**
+     * Probe for x. The search stops early at a cell whose resident is
+     * closer to home than x would be, since x would have displaced it.
+     * @return the cell holding x, or -1 if not found.
+     */
+    private int findPos(AnyType x){
+        int currentPos = myhash(x);
+        for(int probe = 1; probes[currentPos] >= probe; probe++){
+            if(array[currentPos].equals(x)){
+                return currentPos;
+            }
+            currentPos = next(currentPos);
+        }
+        return -1;
+    }
+
+    private int next(int pos){
+        return ++pos == array.length ? 0 : pos;
+    }
+
+    private void doClear(){
+        theSize = 0;
+        for(int i = 0; i < array.length; i++){
+            array[i] = null;
+            probes[i] = 0;
+        }
+    }
+
+    /**
+     * Linear probing turns runs of nearby hash codes into long clusters,
+     * so the hash code is scrambled (MurmurHash3 fmix32) first.
+     */
+    private int myhash(AnyType x){
+        int hashVal = x.hashCode();
+        hashVal ^= hashVal >>> 16;
+        hashVal *= 0x85EBCA6B;
+        hashVal ^= hashVal >>> 13;
+        hashVal *= 0xC2B2AE35;
+        hashVal ^= hashVal >>> 16;
+        return tableSize.index(hashVal);
+    }
+
+    /**
+     * Internal method to allocate array.
+     * @param arraySize the size of the array.
+     */
+    private void allocateArray(int arraySize){
+        tableSize = sizing.sizeFor(arraySize);
+        array = (AnyType[]) new Object[tableSize.length];
+        probes = new int[tableSize.length];
+    }
+
+    public static void main(String[] args) {
+        RobinHoodHashTable<String> H = new RobinHoodHashTable<>();
+        long startTime = System.currentTimeMillis();
+
+        final int NUMS = 2000000;
+        final int GAP = 37;
+
+        System.out.println("Checking...(no more output means success)");
+
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            H.insert(" " + i);
+        }
+        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+            if(H.insert(" " + i)){
+                System.out.println("OOPS!!! " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            H.remove(" " + i);
+        }
+        for(int i = 2; i < NUMS; i += 2){
+            if(!H.contains(" " + i)){
+                System.out.println("Find fails " + i);
+            }
+        }
+        for(int i = 1; i < NUMS; i += 2){
+            if(H.contains(" " + i)){
+                System.out.println("OOPS!!! " + i);
+            }
+        }
+        long endTime = System.currentTimeMillis();
+        System.out.println("Elapsed time: " + (endTime - startTime));
+
+        // Churn: keep NUMS / 2 keys live, replacing the oldest one at each step.
+        // Without tombstones the probe lengths should stay flat.
+        RobinHoodHashTable<String> C = new RobinHoodHashTable<>();
+        final int LIVE = NUMS / 2;
+        int next = 0;
+        for( ; next < LIVE; next++){
+            C.insert(" " + next);
+        }
+        for(int round = 0; round < 5; round++){
+            for(int i = 0; i < LIVE; i++, next++){
+                C.remove(" " + (next - LIVE));
+                C.insert(" " + next);
+            }
+            System.out.println("Round " + round + ": size " + C.size() + ", mean probe " + C.meanProbeLength()
+                    + ", max probe " + C.maxProbeLength());
+        }
+    }
+}
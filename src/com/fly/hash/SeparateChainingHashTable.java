@@ -16,9 +16,17 @@ import java.util.List;
 public class SeparateChainingHashTable<AnyType> {
 
     private static final int DEFAULT_TABLE_SIZE = 101;
-    //数组集合
+    private static final int BATCH_GROUP = 16;   // 批量查找时每组先算哈希再探测的元素数
+    private static final int MIGRATE_STEP = 8;   // 增量扩容时每次操作迁移的链表数
+    //数组集合，空链表在第一次写入前为 null
     private List<AnyType>[] theLists;
+    private final TableSizing sizing;    // 表长取素数还是 2 的幂
+    private TableSizing.Size tableSize;  // theLists 的长度及哈希值的归约方式
     private int currentSize;
+    private final boolean incremental;   // 是否增量扩容
+    private List<AnyType>[] oldLists;    // 增量扩容期间尚未迁移完的旧表，否则为 null
+    private TableSizing.Size oldSize;
+    private int migrated;                // oldLists 中已迁移的链表数
 
     /**
      * 构造哈希表
@@ -32,10 +40,29 @@ public class SeparateChainingHashTable<AnyType> {
      * @param size  合适的表大小
      */
     public SeparateChainingHashTable(int size){
-        theLists = new LinkedList[nextPrime(size)];
-        for (int i = 0; i < theLists.length; i++) {
-            theLists[i] = new LinkedList<>();
-        }
+        this(size, false);
+    }
+
+    /**
+     * 构造哈希表
+     * @param size  合适的表大小
+     * @param incrementalResize 为 true 时扩容不一次性复制整张表，
+     *                          而是新旧两表并存，每次操作迁移 MIGRATE_STEP 条链表
+     */
+    public SeparateChainingHashTable(int size, boolean incrementalResize){
+        this(size, incrementalResize, TableSizing.PRIME);
+    }
+
+    /**
+     * 构造哈希表
+     * @param size  合适的表大小
+     * @param incrementalResize 同上
+     * @param sizing 表长取素数（快速取模）或 2 的幂（乘法散列）
+     */
+    public SeparateChainingHashTable(int size, boolean incrementalResize, TableSizing sizing){
+        this.sizing = sizing;
+        incremental = incrementalResize;
+        allocateLists(size);
     }
 
     /**
@@ -43,8 +70,9 @@ public class SeparateChainingHashTable<AnyType> {
      * @param x 要插入的元素
      */
     public void insert(AnyType x){
-        List<AnyType> whichList = theLists[myhash(x)];
-        if(!whichList.contains(x)){
+        migrate(MIGRATE_STEP);
+        List<AnyType> whichList = bucket(myhash(x));
+        if(!whichList.contains(x) && oldList(x) == null){
             whichList.add(x);
             if(++currentSize > theLists.length){
                 rehash();
@@ -52,13 +80,66 @@ public class SeparateChainingHashTable<AnyType> {
         }
     }
 
+    /**
+     * 批量写入哈希表。先按批量大小一次性扩容，避免逐个插入时多次 rehash
+     * @param batch 要插入的元素
+     * @return 实际插入（原先不存在）的元素个数
+     */
+    public int insertAll(AnyType[] batch){
+        migrate(Integer.MAX_VALUE);
+        if(currentSize + batch.length > theLists.length){
+            rehash(currentSize + batch.length);
+        }
+        int inserted = 0;
+        for(AnyType x: batch){
+            List<AnyType> whichList = bucket(myhash(x));
+            if(!whichList.contains(x)){
+                whichList.add(x);
+                currentSize++;
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * 批量查找。每组先计算全部哈希值，再逐个探测链表
+     * @param batch 要查找的元素
+     * @param results results[i] 置为 batch[i] 是否存在，长度至少为 batch.length
+     * @return 找到的元素个数
+     */
+    public int containsAll(AnyType[] batch, boolean[] results){
+        // 只迁移与同样次数的 contains 相当的链表，尚未迁移的元素到旧表中查找
+        migrate((int) Math.min(Integer.MAX_VALUE, (long) MIGRATE_STEP * batch.length));
+        int[] positions = new int[BATCH_GROUP];
+        int found = 0;
+        for(int start = 0; start < batch.length; start += BATCH_GROUP){
+            int end = Math.min(start + BATCH_GROUP, batch.length);
+            for(int i = start; i < end; i++){
+                positions[i - start] = myhash(batch[i]);
+            }
+            for(int i = start; i < end; i++){
+                List<AnyType> whichList = theLists[positions[i - start]];
+                results[i] = (whichList != null && whichList.contains(batch[i])) || oldList(batch[i]) != null;
+                if(results[i]){
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
     /**
      * 从哈希表中移除
      * @param x 移除的元素
      */
     public void remove(AnyType x){
+        migrate(MIGRATE_STEP);
         List<AnyType> whichList = theLists[myhash(x)];
-        if(whichList.contains(x)){
+        if(whichList == null || !whichList.contains(x)){
+            whichList = oldList(x);
+        }
+        if(whichList != null && whichList.contains(x)){
             whichList.remove(x);
             currentSize--;
         }
@@ -70,8 +151,53 @@ public class SeparateChainingHashTable<AnyType> {
      * @return
      */
     public boolean contains(AnyType x){
+        migrate(MIGRATE_STEP);
         List<AnyType> whichList = theLists[myhash(x)];
-        return whichList.contains(x);
+        return (whichList != null && whichList.contains(x)) || oldList(x) != null;
+    }
+
+    /**
+     * 取得第 i 条链表，不存在时创建
+     */
+    private List<AnyType> bucket(int i){
+        if(theLists[i] == null){
+            theLists[i] = new LinkedList<>();
+        }
+        return theLists[i];
+    }
+
+    /**
+     * 在尚未迁移的旧链表中查找元素
+     * @param x 要查找的元素
+     * @return 包含 x 的旧链表，不存在时返回 null
+     */
+    private List<AnyType> oldList(AnyType x){
+        if(oldLists == null){
+            return null;
+        }
+        int i = oldSize.index(x.hashCode());
+        if(i < migrated || oldLists[i] == null || !oldLists[i].contains(x)){
+            return null;
+        }
+        return oldLists[i];
+    }
+
+    /**
+     * 把旧表中至多 buckets 条链表迁移到新表，全部迁移完后丢弃旧表
+     * @param buckets 本次迁移的链表数上限
+     */
+    private void migrate(int buckets){
+        for( ; buckets > 0 && oldLists != null; buckets--){
+            if(oldLists[migrated] != null){
+                for(AnyType item: oldLists[migrated]){
+                    bucket(myhash(item)).add(item);
+                }
+            }
+            oldLists[migrated++] = null;
+            if(migrated == oldLists.length){
+                oldLists = null;
+            }
+        }
     }
 
     /**
@@ -79,8 +205,9 @@ public class SeparateChainingHashTable<AnyType> {
      */
     public void makeEmpty(){
         for(int i = 0; i < theLists.length; i++){
-            theLists[i].clear();
+            theLists[i] = null;
         }
+        oldLists = null;
         currentSize = 0;
     }
 
@@ -102,51 +229,28 @@ public class SeparateChainingHashTable<AnyType> {
         return hashVal;
     }
 
-    /**
-     * Internal method to find a prime number at least as large as n.
-     * @param n the starting number (must be positive).
-     * @return a prime number larger than or equal to n.
-     */
-    private static int nextPrime(int n){
-        if(n % 2 == 0){
-            n++;
-        }
-        for( ; !isPrime(n); n += 2){
-            ;
-        }
-        return n;
-    }
-
-    /**
-     * 测试一个数是否是素数
-     * 不是一个有效率的算法
-     * @param n 要测试的数字
-     * @return 测试结果
-     */
-    private static boolean isPrime(int n){
-        if(n == 2 || n == 3){
-            return true;
-        }
-        if(n == 1 || n % 2 == 0){
-            return false;
-        }
-        for(int i = 3; i * i <= n; i += 2){
-            if(n % i == 0){
-                return false;
-            }
+    private void rehash(){
+        //创建一个新的两倍大小的空表
+        if(incremental){
+            migrate(Integer.MAX_VALUE);   // 通常上一次扩容早已迁移完
+            oldLists = theLists;
+            oldSize = tableSize;
+            migrated = 0;
+            allocateLists(2 * oldLists.length);
+        }else {
+            rehash(2 * theLists.length);
         }
-        return true;
     }
 
-    private void rehash(){
+    private void rehash(int newSize){
+        migrate(Integer.MAX_VALUE);
         List<AnyType>[] oldLists = theLists;
-        //创建一个新的两倍大小的空表
-        theLists = new List[nextPrime(2 * theLists.length)];
-        for(int j = 0; j < theLists.length; j++){
-            theLists[j] = new LinkedList<>();
-        }
+        allocateLists(newSize);
         currentSize = 0;
         for(List<AnyType> list: oldLists){
+            if(list == null){
+                continue;
+            }
             for(AnyType item: list){
                 insert(item);
             }
@@ -154,40 +258,50 @@ public class SeparateChainingHashTable<AnyType> {
     }
 
     private int myhash(AnyType x){
-        int hashVal = x.hashCode();
-        hashVal %= theLists.length;
-        if(hashVal < 0){
-            hashVal += theLists.length;
-        }
-        return hashVal;
+        return tableSize.index(x.hashCode());
     }
 
-    public static void main(String[] args) {
-        SeparateChainingHashTable<Integer> H = new SeparateChainingHashTable<>();
-        long startTime = System.currentTimeMillis();
+    /**
+     * 按 sizing 选定表长并分配空表
+     * @param size 最小表长
+     */
+    private void allocateLists(int size){
+        tableSize = sizing.sizeFor(size);
+        theLists = new List[tableSize.length];
+    }
 
+    public static void main(String[] args) {
         final int NUMS = 2000000;
         final int GAP = 37;
 
         System.out.println("Checking...(no more output means success)");
 
-        for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
-            H.insert(i);
-        }
-        for(int i = 1; i < NUMS; i += 2){
-            H.remove(i);
-        }
-        for(int i = 2; i < NUMS; i += 2){
-            if(!H.contains(i)){
-                System.out.println("Find fails " + i);
+        for(boolean incremental: new boolean[]{ false, true }){
+            SeparateChainingHashTable<Integer> H = new SeparateChainingHashTable<>(DEFAULT_TABLE_SIZE, incremental);
+            long startTime = System.currentTimeMillis();
+            long maxInsert = 0;
+
+            for(int i = GAP; i != 0; i = (i + GAP) % NUMS){
+                long t = System.nanoTime();
+                H.insert(i);
+                maxInsert = Math.max(maxInsert, System.nanoTime() - t);
             }
-        }
-        for(int i = 1; i < NUMS; i += 2){
-            if(H.contains(i)){
-                System.out.println("OOPS!!!" + i);
+            for(int i = 1; i < NUMS; i += 2){
+                H.remove(i);
+            }
+            for(int i = 2; i < NUMS; i += 2){
+                if(!H.contains(i)){
+                    System.out.println("Find fails " + i);
+                }
+            }
+            for(int i = 1; i < NUMS; i += 2){
+                if(H.contains(i)){
+                    System.out.println("OOPS!!!" + i);
+                }
             }
+            long endTime = System.currentTimeMillis();
+            System.out.println((incremental ? "Incremental" : "Stop-the-world") + " resize: elapsed time:" + (endTime - startTime)
+                    + ", slowest insert: " + maxInsert / 1000 + "us");
         }
-        long endTime = System.currentTimeMillis();
-        System.out.println("Elapsed time:" + (endTime - startTime));
     }
 }
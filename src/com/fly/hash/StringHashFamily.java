@@ -34,4 +34,21 @@ public class StringHashFamily implements HashFamily<String>{
         return hashVal;
     }
 
+    /**
+     * All functions in one pass over x; out[i] equals hash(x, i).
+     */
+    @Override
+    public void hashAll(String x, int[] out){
+        final int d = MULTIPLIERS.length;
+        for(int i = 0; i < d; i++){
+            out[i] = 0;
+        }
+        for(int c = 0; c < x.length(); c++){
+            final char ch = x.charAt(c);
+            for(int i = 0; i < d; i++){
+                out[i] = MULTIPLIERS[i] * out[i] + ch;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,216 @@
+package com.fly.hash;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * How a hash table picks its length and reduces a hash code to a cell,
+ * shared by the tables in this package in place of their own nextPrime.
+ *
+ * PRIME takes lengths from a precomputed table of primes, about 19% apart,
+ * and reduces with Lemire's fastmod: two multiplies by a constant computed
+ * once per length, instead of a divide on every probe.
+ * POWER_OF_TWO uses lengths 2^k and Fibonacci hashing: multiply by 2^32/phi
+ * and keep the top k bits, so every bit of the hash code reaches the index
+ * and a plain mask never sees only the low bits.
+ */
+public enum TableSizing {
+
+    PRIME {
+        public Size sizeFor(int n){
+            int i = Arrays.binarySearch(PRIMES, n);
+            if(i < 0){
+                i = -i - 1;
+            }
+            if(i == PRIMES.length){
+                throw new IllegalArgumentException("Table size too large: " + n);
+            }
+            return new Prime(PRIMES[i]);
+        }
+    },
+
+    POWER_OF_TWO {
+        public Size sizeFor(int n){
+            if(n > 1 << 30){
+                throw new IllegalArgumentException("Table size too large: " + n);
+            }
+            return new PowerOfTwo(n <= 2 ? 2 : Integer.highestOneBit(n - 1) << 1);
+        }
+    };
+
+    /**
+     * Choose a table length.
+     * @param n the smallest acceptable length.
+     * @return the length and its reduction, at least n.
+     */
+    public abstract Size sizeFor(int n);
+
+    /**
+     * A table length together with the way hash codes are reduced to it.
+     */
+    public static abstract class Size {
+        public final int length;
+
+        Size(int length){
+            this.length = length;
+        }
+
+        /**
+         * Reduce a hash code to a cell.
+         * @param hashVal any int, negative values included.
+         * @return an index in [0, length).
+         */
+        public abstract int index(int hashVal);
+
+        /**
+         * How much the quadratic probe offset grows per step. Starting from 1,
+         * a step of 2 gives offsets 1, 3, 5... and so square distances, which
+         * reach half the cells of a prime table; a step of 1 gives triangular
+         * distances, which reach every cell of a power-of-two table.
+         */
+        public abstract int probeStep();
+
+        /**
+         * @return the sizing this length came from.
+         */
+        public abstract TableSizing sizing();
+    }
+
+    private static final class Prime extends Size {
+        private final long m;   // ceil(2^64 / length)
+
+        Prime(int length){
+            super(length);
+            m = Long.divideUnsigned(-1L, length) + 1;
+        }
+
+        public int index(int hashVal){
+            long lowBits = m * (hashVal & 0xFFFFFFFFL);
+            // High word of the 96-bit lowBits * length. length < 2^31,
+            // so neither partial product nor their sum overflows.
+            return (int)(((lowBits >>> 32) * length + (((lowBits & 0xFFFFFFFFL) * length) >>> 32)) >>> 32);
+        }
+
+        public int probeStep(){
+            return 2;
+        }
+
+        public TableSizing sizing(){
+            return PRIME;
+        }
+    }
+
+    private static final class PowerOfTwo extends Size {
+        private final int shift;
+
+        PowerOfTwo(int length){
+            super(length);
+            shift = 32 - Integer.numberOfTrailingZeros(length);
+        }
+
+        public int index(int hashVal){
+            return (hashVal * 0x9E3779B9) >>> shift;
+        }
+
+        public int probeStep(){
+            return 1;
+        }
+
+        public TableSizing sizing(){
+            return POWER_OF_TWO;
+        }
+    }
+
+    // The smallest prime at or above 2^(k/4), for k = 4..123, then 2^31 - 1.
+    private static final int[] PRIMES = {
+            2, 3, 5, 7, 11, 13, 17, 23, 29, 37, 41, 47, 59, 67, 79, 97, 109, 131, 157, 191, 223,
+            257, 307, 367, 431, 521, 613, 727, 863, 1031, 1223, 1451, 1723, 2053, 2437, 2897, 3449,
+            4099, 4871, 5801, 6899, 8209, 9743, 11587, 13781, 16411, 19489, 23173, 27581, 32771,
+            38971, 46349, 55109, 65537, 77951, 92683, 110221, 131101, 155887, 185369, 220447,
+            262147, 311747, 370759, 440893, 524309, 623521, 741457, 881779, 1048583, 1246997,
+            1482919, 1763491, 2097169, 2493949, 2965847, 3526987, 4194319, 4987901, 5931649,
+            7053971, 8388617, 9975803, 11863289, 14107921, 16777259, 19951597, 23726569, 28215809,
+            33554467, 39903197, 47453149, 56431657, 67108879, 79806341, 94906297, 112863217,
+            134217757, 159612679, 189812533, 225726419, 268435459, 319225391, 379625083, 451452839,
+            536870923, 638450719, 759250133, 902905657, 1073741827, 1276901429, 1518500279,
+            1805811341, 2147483647
+    };
+
+    public static void main(String[] args) {
+        final int NUMS = 2000000;
+        final int ROUNDS = 5;
+        final int DEFAULT_SIZE = 101;
+        java.util.Random r = new java.util.Random(1);
+
+        System.out.println("Checking...(no more output means success)");
+        for(int p: PRIMES){
+            Size s = PRIME.sizeFor(p);
+            for(int i = 0; i < 1000; i++){
+                int h = i < 4 ? new int[]{ 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE }[i] : r.nextInt();
+                if(s.index(h) != Integer.remainderUnsigned(h, p)){
+                    System.out.println("OOPS!!! fastmod " + h + " % " + p);
+                }
+            }
+        }
+
+        // Lookups of keys that are present, then absent, in tables of each kind
+        String[] keys = new String[NUMS];
+        String[] missing = new String[NUMS];
+        for(int i = 0; i < NUMS; i++){
+            keys[i] = " " + i;
+            missing[i] = "x" + i;
+        }
+        // Shuffled, so that consecutive hash codes do not give the prime
+        // tables an unfairly sequential access pattern
+        Collections.shuffle(Arrays.asList(keys), r);
+        Collections.shuffle(Arrays.asList(missing), r);
+        for(int round = 0; round < ROUNDS; round++){
+            for(TableSizing sizing: values()){
+                QuadraticProbingHashTable<String> q = new QuadraticProbingHashTable<>(DEFAULT_SIZE, false, sizing);
+                SeparateChainingHashTable<String> c = new SeparateChainingHashTable<>(DEFAULT_SIZE, false, sizing);
+                RobinHoodHashTable<String> h = new RobinHoodHashTable<>(DEFAULT_SIZE, sizing);
+                CuckooHashTable<String> k = new CuckooHashTable<>(new StringHashFamily(3), DEFAULT_SIZE, false, sizing);
+                IntHashSet ints = new IntHashSet(DEFAULT_SIZE, sizing);
+                for(int i = 0; i < NUMS; i++){
+                    q.insert(keys[i]);
+                    c.insert(keys[i]);
+                    h.insert(keys[i]);
+                    k.insert(keys[i]);
+                    ints.insert(i * 8);
+                }
+                int found = 0;
+                long start = System.currentTimeMillis();
+                for(int i = 0; i < NUMS; i++){
+                    found += (q.contains(keys[i]) ? 1 : 0) + (q.contains(missing[i]) ? 1 : 0);
+                }
+                long quadratic = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                for(int i = 0; i < NUMS; i++){
+                    found += (c.contains(keys[i]) ? 1 : 0) + (c.contains(missing[i]) ? 1 : 0);
+                }
+                long chaining = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                for(int i = 0; i < NUMS; i++){
+                    found += (h.contains(keys[i]) ? 1 : 0) + (h.contains(missing[i]) ? 1 : 0);
+                }
+                long robinHood = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                for(int i = 0; i < NUMS; i++){
+                    found += (k.contains(keys[i]) ? 1 : 0) + (k.contains(missing[i]) ? 1 : 0);
+                }
+                long cuckoo = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                for(int i = 0; i < NUMS; i++){
+                    found += (ints.contains(i * 8) ? 1 : 0) + (ints.contains(i * 8 + 1) ? 1 : 0);
+                }
+                long intSet = System.currentTimeMillis() - start;
+                if(found != 5 * NUMS){
+                    System.out.println("OOPS!!! found " + found);
+                }
+                System.out.println(sizing + ": " + 2 * NUMS + " lookups: quadratic " + quadratic
+                        + "ms, chaining " + chaining + "ms, robin hood " + robinHood + "ms, cuckoo " + cuckoo
+                        + "ms, IntHashSet " + intSet + "ms");
+            }
+        }
+    }
+}
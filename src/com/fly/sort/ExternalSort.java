@@ -0,0 +1,593 @@
+package com.fly.sort;
+
+import com.fly.PriorityQueueHeap.BinaryHeap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * External merge sort, for files too large to sort in memory.
+ * The input is read in chunks that fit the memory budget; each chunk is
+ * sorted in memory with Sort or RadixSort and spilled to a temporary run
+ * file. The runs are then merged k at a time through a BinaryHeap holding
+ * the head record of every run, with as many passes as the budget requires.
+ *
+ * Two record formats are supported: big-endian 8-byte longs, and lines of
+ * UTF-8 text ended by '\n' and compared as Strings.
+ * All file access goes through FileChannels and ByteBuffers, which are
+ * heap buffers by default or direct buffers on request.
+ */
+public class ExternalSort {
+
+    public static final long DEFAULT_MEMORY = 64L << 20;
+    private static final int MIN_BUFFER_SIZE = 1 << 12;
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_FAN_IN = 1 << 10;
+    private static final int STRING_OVERHEAD = 48;     // Estimated heap bytes of a String beyond its chars
+
+    private final long memory;
+    private final boolean direct;
+    private final File tempDir;
+    private int runs;         // Runs written by the last sort
+    private int mergePasses;  // Merge passes of the last sort, the final one included
+
+    /**
+     * Construct a sorter with the default memory budget and heap buffers.
+     */
+    public ExternalSort(){
+        this(DEFAULT_MEMORY);
+    }
+
+    /**
+     * Construct a sorter using heap buffers and the default temporary directory.
+     * @param memory the bytes of heap the sort may use for records and buffers.
+     */
+    public ExternalSort(long memory){
+        this(memory, false, null);
+    }
+
+    /**
+     * Construct a sorter.
+     * @param memory the bytes of heap the sort may use for records and buffers.
+     * @param directBuffers true to do I/O through direct ByteBuffers, which
+     *                      saves a copy per read and write but lives outside the heap.
+     * @param tempDir where run files are written, or null for the system default.
+     */
+    public ExternalSort(long memory, boolean directBuffers, File tempDir){
+        if(memory < 4 * MIN_BUFFER_SIZE){
+            throw new IllegalArgumentException("Memory budget too small: " + memory);
+        }
+        this.memory = memory;
+        direct = directBuffers;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Sort a file of big-endian 8-byte longs into ascending order.
+     * @param in the file to sort; its length must be a multiple of 8.
+     * @param out the sorted file, replaced if it exists; may not be in.
+     */
+    public void sortLongs(File in, File out) throws IOException {
+        sort(in, out, Format.LONGS);
+    }
+
+    /**
+     * Sort a file of UTF-8 lines into String order. Every line in the
+     * output, the last included, ends with '\n'.
+     * @param in the file to sort.
+     * @param out the sorted file, replaced if it exists; may not be in.
+     */
+    public void sortLines(File in, File out) throws IOException {
+        sort(in, out, Format.LINES);
+    }
+
+    /**
+     * @return the number of sorted runs the last sort wrote.
+     */
+    public int getRuns(){
+        return runs;
+    }
+
+    /**
+     * @return the number of merge passes of the last sort, 0 if the input fit in one run.
+     */
+    public int getMergePasses(){
+        return mergePasses;
+    }
+
+    private void sort(File in, File out, Format format) throws IOException {
+        ArrayDeque<File> pending = new ArrayDeque<>();
+        runs = 0;
+        mergePasses = 0;
+        try {
+            int bufferSize = (int) Math.min(MAX_BUFFER_SIZE, memory / 8);
+            try(RecordReader reader = new RecordReader(in, bufferSize, direct)){
+                // The chunk gets what is left after the input and output buffers
+                Chunk chunk = format.newChunk(memory - 2L * bufferSize);
+                while (chunk.fill(reader)){
+                    chunk.sort();
+                    // Input that fits in one chunk is written straight to out
+                    File run = runs == 0 && reader.atEnd() ? out : newRunFile();
+                    try(RecordWriter writer = new RecordWriter(run, bufferSize, direct)){
+                        chunk.writeTo(writer);
+                    }
+                    runs++;
+                    if(run == out){
+                        return;
+                    }
+                    pending.add(run);
+                }
+            }
+            if(pending.isEmpty()){
+                new RecordWriter(out, MIN_BUFFER_SIZE, false).close();
+                return;
+            }
+
+            // One buffer per input run and one for the output
+            int fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, memory / MIN_BUFFER_SIZE - 1));
+            // The first pass merges only enough runs to leave a power of the
+            // fan-in, so every later pass, the final one included, merges
+            // exactly fanIn runs at a time. No pass then reads a run written
+            // by the same pass, and a record is written at most once per pass
+            long target = 1;
+            while (target * fanIn < pending.size()){
+                target *= fanIn;
+            }
+            while (pending.size() > fanIn){
+                while (pending.size() > target){
+                    // Each merge of g runs leaves g - 1 fewer
+                    int groupSize = (int) Math.min(fanIn, pending.size() - target + 1);
+                    List<File> group = new ArrayList<>();
+                    while (group.size() < groupSize){
+                        group.add(pending.poll());
+                    }
+                    File merged = newRunFile();
+                    merge(group, merged, format);
+                    deleteAll(group);
+                    pending.add(merged);
+                }
+                mergePasses++;
+                target /= fanIn;
+            }
+            merge(pending, out, format);
+            mergePasses++;
+        }finally {
+            deleteAll(pending);
+        }
+    }
+
+    /**
+     * Merge sorted runs into one, through a heap of the runs ordered by their head records.
+     * @param inputs the runs, at most the fan-in.
+     * @param out the merged run.
+     */
+    private void merge(Collection<File> inputs, File out, Format format) throws IOException {
+        int bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, memory / (inputs.size() + 1)));
+        BinaryHeap<Run> heap = new BinaryHeap<>(inputs.size());
+        List<Run> open = new ArrayList<>();
+        try {
+            for(File f: inputs){
+                Run r = format.newRun(new RecordReader(f, bufferSize, direct));
+                open.add(r);
+                if(r.advance()){
+                    heap.insert(r);
+                }
+            }
+            try(RecordWriter writer = new RecordWriter(out, bufferSize, direct)){
+                while (!heap.isEmpty()){
+                    Run r = heap.deleteMin();
+                    r.writeHead(writer);
+                    if(r.advance()){
+                        heap.insert(r);
+                    }
+                }
+            }
+        }finally {
+            for(Run r: open){
+                r.in.close();
+            }
+        }
+    }
+
+    private File newRunFile() throws IOException {
+        return File.createTempFile("run", ".tmp", tempDir);
+    }
+
+    private static void deleteAll(Collection<File> files){
+        for(File f: files){
+            f.delete();
+        }
+        files.clear();
+    }
+
+    private enum Format {
+        LONGS {
+            Chunk newChunk(long memory){
+                return new LongChunk((int) Math.min(Integer.MAX_VALUE - 8, memory / 8));
+            }
+            Run newRun(RecordReader in){
+                return new LongRun(in);
+            }
+        },
+        LINES {
+            Chunk newChunk(long memory){
+                return new LineChunk(memory);
+            }
+            Run newRun(RecordReader in){
+                return new LineRun(in);
+            }
+        };
+
+        abstract Chunk newChunk(long memory);
+        abstract Run newRun(RecordReader in);
+    }
+
+    /**
+     * The records of one run while they are in memory.
+     */
+    private static abstract class Chunk {
+        /**
+         * Read records until the chunk is full or the input ends.
+         * @return false if no record was read.
+         */
+        abstract boolean fill(RecordReader in) throws IOException;
+        abstract void sort();
+        abstract void writeTo(RecordWriter out) throws IOException;
+    }
+
+    private static final class LongChunk extends Chunk {
+        private final long[] items;
+        private long[] sorted;
+        private int size;
+
+        LongChunk(int capacity){
+            items = new long[capacity];
+        }
+
+        boolean fill(RecordReader in) throws IOException {
+            size = 0;
+            while (size < items.length && in.hasLong()){
+                items[size++] = in.readLong();
+            }
+            return size > 0;
+        }
+
+        void sort(){
+            // Only the last chunk is short, so copying it costs one chunk at most
+            sorted = size == items.length ? items : Arrays.copyOf(items, size);
+            Sort.quicksort(sorted);
+        }
+
+        void writeTo(RecordWriter out) throws IOException {
+            for(int i = 0; i < size; i++){
+                out.writeLong(sorted[i]);
+            }
+            sorted = null;
+        }
+    }
+
+    private static final class LineChunk extends Chunk {
+        private final long memory;
+        private final List<String> items = new ArrayList<>();
+        private String[] sorted;
+
+        LineChunk(long memory){
+            this.memory = memory;
+        }
+
+        boolean fill(RecordReader in) throws IOException {
+            items.clear();
+            long used = 0;
+            String line;
+            // Heap size of the String, its slot in the list and, during sort, in the array
+            while (used < memory && (line = in.readLine()) != null){
+                items.add(line);
+                used += STRING_OVERHEAD + 2L * line.length() + 16;
+            }
+            return !items.isEmpty();
+        }
+
+        void sort(){
+            sorted = items.toArray(new String[items.size()]);
+            items.clear();
+            RadixSort.multikeyQuicksort(sorted);
+        }
+
+        void writeTo(RecordWriter out) throws IOException {
+            for(String s: sorted){
+                out.writeLine(s);
+            }
+            sorted = null;
+        }
+    }
+
+    /**
+     * An open run during a merge, ordered by its current head record.
+     */
+    private static abstract class Run implements Comparable<Run> {
+        final RecordReader in;
+
+        Run(RecordReader in){
+            this.in = in;
+        }
+
+        /**
+         * Move to the next record.
+         * @return false when the run is exhausted.
+         */
+        abstract boolean advance() throws IOException;
+        abstract void writeHead(RecordWriter out) throws IOException;
+    }
+
+    private static final class LongRun extends Run {
+        private long head;
+
+        LongRun(RecordReader in){
+            super(in);
+        }
+
+        boolean advance() throws IOException {
+            if(!in.hasLong()){
+                return false;
+            }
+            head = in.readLong();
+            return true;
+        }
+
+        void writeHead(RecordWriter out) throws IOException {
+            out.writeLong(head);
+        }
+
+        public int compareTo(Run rhs){
+            return Long.compare(head, ((LongRun) rhs).head);
+        }
+    }
+
+    private static final class LineRun extends Run {
+        private String head;
+
+        LineRun(RecordReader in){
+            super(in);
+        }
+
+        boolean advance() throws IOException {
+            return (head = in.readLine()) != null;
+        }
+
+        void writeHead(RecordWriter out) throws IOException {
+            out.writeLine(head);
+        }
+
+        public int compareTo(Run rhs){
+            return head.compareTo(((LineRun) rhs).head);
+        }
+    }
+
+    /**
+     * Sequential reads of longs or lines from a FileChannel through one buffer.
+     */
+    private static final class RecordReader implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean eof;
+        private byte[] line = new byte[128];
+
+        RecordReader(File f, int bufferSize, boolean direct) throws IOException {
+            file = new RandomAccessFile(f, "r");
+            channel = file.getChannel();
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            buffer.flip();
+        }
+
+        /**
+         * Top up the buffer so that it holds at least need bytes, unless the file ends first.
+         */
+        private void fill(int need) throws IOException {
+            if(buffer.remaining() >= need || eof){
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < need){
+                if(channel.read(buffer) < 0){
+                    eof = true;
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * @return true if every byte of the file has been consumed.
+         */
+        boolean atEnd() throws IOException {
+            fill(1);
+            return !buffer.hasRemaining();
+        }
+
+        boolean hasLong() throws IOException {
+            fill(8);
+            if(buffer.remaining() >= 8){
+                return true;
+            }
+            if(buffer.hasRemaining()){
+                throw new IOException("File length is not a multiple of 8");
+            }
+            return false;
+        }
+
+        long readLong(){
+            return buffer.getLong();
+        }
+
+        /**
+         * @return the next line without its '\n', or null at the end of the file.
+         */
+        String readLine() throws IOException {
+            int length = 0;
+            for( ; ; ){
+                if(!buffer.hasRemaining()){
+                    fill(1);
+                    if(!buffer.hasRemaining()){
+                        return length == 0 ? null : new String(line, 0, length, StandardCharsets.UTF_8);
+                    }
+                }
+                byte b = buffer.get();
+                if(b == '\n'){
+                    return new String(line, 0, length, StandardCharsets.UTF_8);
+                }
+                if(length == line.length){
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Sequential writes of longs or lines to a FileChannel through one buffer.
+     */
+    private static final class RecordWriter implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        RecordWriter(File f, int bufferSize, boolean direct) throws IOException {
+            file = new RandomAccessFile(f, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+
+        void writeLong(long x) throws IOException {
+            if(buffer.remaining() < 8){
+                flush();
+            }
+            buffer.putLong(x);
+        }
+
+        void writeLine(String s) throws IOException {
+            byte[] bytes = (s + '\n').getBytes(StandardCharsets.UTF_8);
+            for(int off = 0; off < bytes.length; ){
+                if(!buffer.hasRemaining()){
+                    flush();
+                }
+                int n = Math.min(buffer.remaining(), bytes.length - off);
+                buffer.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            try {
+                flush();
+            }finally {
+                file.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final int NUM_LONGS = 5_000_000;
+        final int NUM_LINES = 1_000_000;
+        Random r = new Random(1);
+        File in = File.createTempFile("unsorted", ".bin");
+        File out = File.createTempFile("sorted", ".bin");
+        in.deleteOnExit();
+        out.deleteOnExit();
+
+        long[] expected = new long[NUM_LONGS];
+        try(RecordWriter w = new RecordWriter(in, 1 << 16, false)){
+            for(int i = 0; i < NUM_LONGS; i++){
+                expected[i] = r.randomLong(-1L << 40, 1L << 40);
+                w.writeLong(expected[i]);
+            }
+        }
+        long start = System.currentTimeMillis();
+        Sort.quicksort(expected);
+        long end = System.currentTimeMillis();
+        System.out.println("In memory, " + NUM_LONGS + " longs: " + (end - start) + "ms");
+
+        System.out.println("Checking...(no more output means success)");
+        // 1MB makes about 40 runs merged in one pass; 64KB forces several passes
+        long[] budgets = { 64L << 20, 1L << 20, 64L << 10 };
+        for(long budget: budgets){
+            for(boolean direct: new boolean[]{ false, true }){
+                ExternalSort sorter = new ExternalSort(budget, direct, null);
+                start = System.currentTimeMillis();
+                sorter.sortLongs(in, out);
+                end = System.currentTimeMillis();
+                try(RecordReader check = new RecordReader(out, 1 << 16, false)){
+                    for(int i = 0; i < NUM_LONGS; i++){
+                        if(!check.hasLong() || check.readLong() != expected[i]){
+                            System.out.println("Error at " + i);
+                            break;
+                        }
+                    }
+                    if(!check.atEnd()){
+                        System.out.println("OOPS!!! output too long");
+                    }
+                }
+                System.out.println("Longs, budget " + (budget >> 10) + "KB, " + (direct ? "direct" : "heap")
+                        + " buffers: " + sorter.getRuns() + " runs, " + sorter.getMergePasses()
+                        + " merge passes, " + (end - start) + "ms");
+            }
+        }
+
+        String[] lines = new String[NUM_LINES];
+        try(RecordWriter w = new RecordWriter(in, 1 << 16, false)){
+            for(int i = 0; i < NUM_LINES; i++){
+                StringBuilder sb = new StringBuilder();
+                int len = r.randomInt(0, 20);
+                for(int j = 0; j < len; j++){
+                    // Mostly ASCII, with some two and three byte UTF-8 characters
+                    sb.append((char)(j % 7 == 6 ? r.randomInt(0xA0, 0x4FFF) : r.randomInt('a', 'z')));
+                }
+                lines[i] = sb.toString();
+                w.writeLine(lines[i]);
+            }
+        }
+        Arrays.sort(lines);
+        for(long budget: budgets){
+            ExternalSort sorter = new ExternalSort(budget);
+            start = System.currentTimeMillis();
+            sorter.sortLines(in, out);
+            end = System.currentTimeMillis();
+            try(RecordReader check = new RecordReader(out, 1 << 16, false)){
+                for(int i = 0; i < NUM_LINES; i++){
+                    String s = check.readLine();
+                    if(!lines[i].equals(s)){
+                        System.out.println("Error at " + i + ": " + s);
+                        break;
+                    }
+                }
+            }
+            System.out.println("Lines, budget " + (budget >> 10) + "KB: " + sorter.getRuns() + " runs, "
+                    + sorter.getMergePasses() + " merge passes, " + (end - start) + "ms");
+        }
+        in.delete();
+        out.delete();
+    }
+}
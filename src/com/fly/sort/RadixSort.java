@@ -2,6 +2,9 @@ package com.fly.sort;
 
 import java.util.*;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * Created by Fanliyan on 2017/6/3.
@@ -51,8 +54,9 @@ public class RadixSort {
         String[] in = arr;
         String[] out = buffer;
 
+        int[] count = new int[BUCKETS + 1];
         for(int pos = stringLen - 1; pos >= 0; pos--){
-            int[] count = new int[BUCKETS + 1];
+            Arrays.fill(count, 0);
             for(int i = 0; i < N; i++){
                 count[in[i].charAt(pos) + 1]++;
             }
@@ -112,6 +116,746 @@ public class RadixSort {
         }
     }
 
+    private static final int MSD_CUTOFF = 16;       // Ranges this small are insertion sorted
+    private static final int BYTE_BUCKETS = 256;
+
+    /**
+     * MSD radix sort an array of Strings, of any lengths and any chars.
+     * Each UTF-16 char is taken as two byte digits, high byte first, so
+     * the order is that of String.compareTo; a string that has ended sorts
+     * before every digit. Buckets are formed in place, American flag
+     * style, by cycling each item straight into its bucket, so no pass
+     * allocates a list per bucket. A range whose items all share the next
+     * digit is not permuted at all, so a long common prefix costs one
+     * counting pass per byte.
+     * @param arr the array of Strings.
+     */
+    public static void msdRadixSort(String[] arr){
+        msdRadixSort(arr, 0, arr.length, 0, 0, new ArrayList<>());
+    }
+
+    /**
+     * Internal MSD radix sort of arr[lo..hi), whose items agree on their first d digits.
+     * @param level the recursion depth, which picks the count arrays from pool.
+     */
+    private static void msdRadixSort(String[] arr, int lo, int hi, int d, int level, ArrayList<int[][]> pool){
+        for( ; hi - lo > MSD_CUTOFF; d++){
+            int first = digit(arr[lo], d);
+            int[][] counts = countArrays(pool, level);
+            int[] count = counts[0];
+            int[] next = counts[1];
+            // Bucket c = digit + 1 ends up in [count[c], count[c + 1])
+            Arrays.fill(count, 0);
+            for(int i = lo; i < hi; i++){
+                count[digit(arr[i], d) + 2]++;
+            }
+            if(count[first + 2] == hi - lo){
+                if(first < 0){
+                    return;         // All ended, so all equal
+                }
+                continue;           // A shared digit; nothing to move
+            }
+            count[0] = lo;
+            for(int c = 1; c < count.length; c++){
+                count[c] += count[c - 1];
+            }
+            System.arraycopy(count, 0, next, 0, count.length);
+            for(int c = 0; c <= BYTE_BUCKETS; c++){
+                while (next[c] < count[c + 1]){
+                    String item = arr[next[c]];
+                    int home = digit(item, d) + 1;
+                    if(home == c){
+                        next[c]++;
+                    }else {
+                        arr[next[c]] = arr[next[home]];
+                        arr[next[home]++] = item;
+                    }
+                }
+            }
+            // Bucket 0 holds the strings that have ended, which are equal
+            for(int c = 1; c <= BYTE_BUCKETS; c++){
+                if(count[c + 1] - count[c] > 1){
+                    msdRadixSort(arr, count[c], count[c + 1], d + 1, level + 1, pool);
+                }
+            }
+            return;
+        }
+        insertionSort(arr, lo, hi, d >> 1);
+    }
+
+    /**
+     * Byte digit d of s: the high byte of char d / 2 if d is even, else
+     * its low byte, or -1 if s has no such char.
+     */
+    private static int digit(String s, int d){
+        int c = d >> 1;
+        if(c >= s.length()){
+            return -1;
+        }
+        return (d & 1) == 0 ? s.charAt(c) >>> 8 : s.charAt(c) & 0xFF;
+    }
+
+    /**
+     * MSD radix sort an array of byte strings, such as UTF-8 encoded keys,
+     * in unsigned lexicographic order. For UTF-8 that is code point order.
+     * Works as msdRadixSort(String[]), one digit per byte.
+     * @param arr the array of byte strings.
+     */
+    public static void msdRadixSort(byte[][] arr){
+        msdRadixSort(arr, 0, arr.length, 0, 0, new ArrayList<>());
+    }
+
+    private static void msdRadixSort(byte[][] arr, int lo, int hi, int d, int level, ArrayList<int[][]> pool){
+        for( ; hi - lo > MSD_CUTOFF; d++){
+            int first = digit(arr[lo], d);
+            int[][] counts = countArrays(pool, level);
+            int[] count = counts[0];
+            int[] next = counts[1];
+            Arrays.fill(count, 0);
+            for(int i = lo; i < hi; i++){
+                count[digit(arr[i], d) + 2]++;
+            }
+            if(count[first + 2] == hi - lo){
+                if(first < 0){
+                    return;
+                }
+                continue;
+            }
+            count[0] = lo;
+            for(int c = 1; c < count.length; c++){
+                count[c] += count[c - 1];
+            }
+            System.arraycopy(count, 0, next, 0, count.length);
+            for(int c = 0; c <= BYTE_BUCKETS; c++){
+                while (next[c] < count[c + 1]){
+                    byte[] item = arr[next[c]];
+                    int home = digit(item, d) + 1;
+                    if(home == c){
+                        next[c]++;
+                    }else {
+                        arr[next[c]] = arr[next[home]];
+                        arr[next[home]++] = item;
+                    }
+                }
+            }
+            for(int c = 1; c <= BYTE_BUCKETS; c++){
+                if(count[c + 1] - count[c] > 1){
+                    msdRadixSort(arr, count[c], count[c + 1], d + 1, level + 1, pool);
+                }
+            }
+            return;
+        }
+        insertionSort(arr, lo, hi, d);
+    }
+
+    private static int digit(byte[] s, int d){
+        return d < s.length ? s[d] & 0xFF : -1;
+    }
+
+    /**
+     * The count and next-position arrays for a recursion level, allocated
+     * the first time the level is reached and reused after that.
+     */
+    private static int[][] countArrays(ArrayList<int[][]> pool, int level){
+        if(level == pool.size()){
+            pool.add(new int[2][BYTE_BUCKETS + 2]);
+        }
+        return pool.get(level);
+    }
+
+    /**
+     * Three-way radix quicksort (multikey quicksort) an array of Strings.
+     * Partitions on a single char at a time into less, equal and greater
+     * parts, and only the equal part moves on to the next char, so each
+     * char of a shared prefix is examined about once per item rather than
+     * once per comparison. Needs no count arrays, which suits small
+     * alphabets and inputs with many duplicates. Chars are compared as
+     * UTF-16 units, which is the order of String.compareTo.
+     * @param arr the array of Strings.
+     */
+    public static void multikeyQuicksort(String[] arr){
+        multikeyQuicksort(arr, 0, arr.length - 1, 0);
+    }
+
+    /**
+     * Internal multikey quicksort of arr[lo..hi], whose items agree on their first d chars.
+     */
+    private static void multikeyQuicksort(String[] arr, int lo, int hi, int d){
+        while (hi - lo >= MSD_CUTOFF){
+            int v = median3(charAt(arr[lo], d), charAt(arr[(lo + hi) >>> 1], d), charAt(arr[hi], d));
+            int lt = lo;
+            int gt = hi;
+            for(int i = lo; i <= gt; ){
+                int t = charAt(arr[i], d);
+                if(t < v){
+                    swap(arr, lt++, i++);
+                }else if(t > v){
+                    swap(arr, i, gt--);
+                }else {
+                    i++;
+                }
+            }
+            multikeyQuicksort(arr, lo, lt - 1, d);
+            multikeyQuicksort(arr, gt + 1, hi, d);
+            if(v < 0){
+                return;     // The equal part has ended, so its items are equal
+            }
+            // Loop rather than recurse on the equal part, so a long shared prefix does not deepen the stack
+            lo = lt;
+            hi = gt;
+            d++;
+        }
+        insertionSort(arr, lo, hi + 1, d);
+    }
+
+    /**
+     * @return char d of s, or -1 if s has ended.
+     */
+    private static int charAt(String s, int d){
+        return d < s.length() ? s.charAt(d) : -1;
+    }
+
+    private static int median3(int a, int b, int c){
+        if(a > b){
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return c <= a ? a : c >= b ? b : c;
+    }
+
+    private static void swap(Object[] arr, int i, int j){
+        Object tmp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = tmp;
+    }
+
+    /**
+     * Insertion sort arr[lo..hi), whose items agree on their first d chars.
+     */
+    private static void insertionSort(String[] arr, int lo, int hi, int d){
+        for(int p = lo + 1; p < hi; p++){
+            String tmp = arr[p];
+            int j = p;
+            for( ; j > lo && compareFrom(tmp, arr[j - 1], d) < 0; j--){
+                arr[j] = arr[j - 1];
+            }
+            arr[j] = tmp;
+        }
+    }
+
+    private static void insertionSort(byte[][] arr, int lo, int hi, int d){
+        for(int p = lo + 1; p < hi; p++){
+            byte[] tmp = arr[p];
+            int j = p;
+            for( ; j > lo && compareFrom(tmp, arr[j - 1], d) < 0; j--){
+                arr[j] = arr[j - 1];
+            }
+            arr[j] = tmp;
+        }
+    }
+
+    /**
+     * Compare two Strings known to agree on their first d chars, skipping those chars.
+     */
+    private static int compareFrom(String v, String w, int d){
+        int n = Math.min(v.length(), w.length());
+        for(int i = d; i < n; i++){
+            if(v.charAt(i) != w.charAt(i)){
+                return v.charAt(i) - w.charAt(i);
+            }
+        }
+        return v.length() - w.length();
+    }
+
+    /**
+     * Compare two byte strings, unsigned, known to agree on their first d bytes.
+     */
+    private static int compareFrom(byte[] v, byte[] w, int d){
+        int n = Math.min(v.length, w.length);
+        for(int i = d; i < n; i++){
+            if(v[i] != w[i]){
+                return (v[i] & 0xFF) - (w[i] & 0xFF);
+            }
+        }
+        return v.length - w.length;
+    }
+
+    private static final int LSD_CUTOFF = 64;       // Arrays this small are insertion sorted
+
+    /**
+     * LSD radix sort an array of ints, one byte per pass.
+     * The histograms of all four digits are counted in a single pass
+     * first, and a digit on which every key agrees is skipped, so keys
+     * in a narrow range cost fewer than four passes. The sign is handled
+     * by flipping the top bit of the last digit.
+     * @param a the array of ints.
+     */
+    public static void lsdRadixSort(int[] a){
+        lsdRadixSort(a, null, Integer.MIN_VALUE);
+    }
+
+    /**
+     * LSD radix sort an array of int keys, moving a parallel payload array
+     * with them, such as the indices of records the keys belong to.
+     * The sort is stable, so equal keys keep their payloads in order.
+     * @param keys the array of keys.
+     * @param payload payload[i] belongs to keys[i]; the same length as keys.
+     */
+    public static void lsdRadixSort(int[] keys, int[] payload){
+        if(payload.length != keys.length){
+            throw new IllegalArgumentException("Payload length " + payload.length + " != " + keys.length);
+        }
+        lsdRadixSort(keys, payload, Integer.MIN_VALUE);
+    }
+
+    /**
+     * LSD radix sort an array of floats into the order of Arrays.sort:
+     * -0.0f before 0.0f and NaN last. The IEEE bits are mapped to ints
+     * whose unsigned order is the float order (positives get their sign
+     * bit set, negatives have every bit flipped), sorted, and mapped back.
+     * @param a the array of floats.
+     */
+    public static void lsdRadixSort(float[] a){
+        int[] keys = new int[a.length];
+        for(int i = 0; i < a.length; i++){
+            int bits = Float.floatToIntBits(a[i]);
+            keys[i] = bits ^ (bits >> 31 | Integer.MIN_VALUE);
+        }
+        lsdRadixSort(keys, null, 0);
+        for(int i = 0; i < a.length; i++){
+            int bits = keys[i];
+            a[i] = Float.intBitsToFloat(bits ^ (~bits >> 31 | Integer.MIN_VALUE));
+        }
+    }
+
+    /**
+     * Internal LSD radix sort of ints.
+     * @param payload moved along with the keys, or null.
+     * @param flip Integer.MIN_VALUE to sort signed, 0 to sort unsigned.
+     */
+    private static void lsdRadixSort(int[] a, int[] payload, int flip){
+        int n = a.length;
+        if(n < LSD_CUTOFF){
+            insertionSort(a, payload, flip);
+            return;
+        }
+        int[][] count = new int[4][BYTE_BUCKETS];
+        for(int x: a){
+            x ^= flip;
+            count[0][x & 0xFF]++;
+            count[1][x >>> 8 & 0xFF]++;
+            count[2][x >>> 16 & 0xFF]++;
+            count[3][x >>> 24]++;
+        }
+        int[] in = a;
+        int[] out = null;
+        int[] inPayload = payload;
+        int[] outPayload = null;
+        for(int pass = 0; pass < 4; pass++){
+            int shift = 8 * pass;
+            int[] c = count[pass];
+            if(c[(a[0] ^ flip) >>> shift & 0xFF] == n){
+                continue;           // Every key has this digit
+            }
+            if(out == null){
+                out = new int[n];
+                outPayload = payload == null ? null : new int[n];
+            }
+            for(int b = 0, sum = 0; b < BYTE_BUCKETS; b++){
+                int tmp = c[b];
+                c[b] = sum;
+                sum += tmp;
+            }
+            for(int i = 0; i < n; i++){
+                int pos = c[(in[i] ^ flip) >>> shift & 0xFF]++;
+                out[pos] = in[i];
+                if(payload != null){
+                    outPayload[pos] = inPayload[i];
+                }
+            }
+            int[] tmp = in;
+            in = out;
+            out = tmp;
+            tmp = inPayload;
+            inPayload = outPayload;
+            outPayload = tmp;
+        }
+        // After an odd number of passes the result is in the buffer
+        if(in != a){
+            System.arraycopy(in, 0, a, 0, n);
+            if(payload != null){
+                System.arraycopy(inPayload, 0, payload, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Stable insertion sort of keys, compared as (key ^ flip) unsigned.
+     */
+    private static void insertionSort(int[] a, int[] payload, int flip){
+        for(int p = 1; p < a.length; p++){
+            int tmp = a[p];
+            int tmpPayload = payload == null ? 0 : payload[p];
+            int j = p;
+            for( ; j > 0 && Integer.compareUnsigned(tmp ^ flip, a[j - 1] ^ flip) < 0; j--){
+                a[j] = a[j - 1];
+                if(payload != null){
+                    payload[j] = payload[j - 1];
+                }
+            }
+            a[j] = tmp;
+            if(payload != null){
+                payload[j] = tmpPayload;
+            }
+        }
+    }
+
+    /**
+     * LSD radix sort an array of longs, one byte per pass, with the
+     * single counting pass and skipped passes of lsdRadixSort(int[]).
+     * Timestamps and sequential ids share their high bytes, so they
+     * usually need only three to five of the eight passes.
+     * @param a the array of longs.
+     */
+    public static void lsdRadixSort(long[] a){
+        lsdRadixSort(a, null, Long.MIN_VALUE);
+    }
+
+    /**
+     * LSD radix sort an array of long keys, moving a parallel payload
+     * array with them. The sort is stable.
+     * @param keys the array of keys.
+     * @param payload payload[i] belongs to keys[i]; the same length as keys.
+     */
+    public static void lsdRadixSort(long[] keys, int[] payload){
+        if(payload.length != keys.length){
+            throw new IllegalArgumentException("Payload length " + payload.length + " != " + keys.length);
+        }
+        lsdRadixSort(keys, payload, Long.MIN_VALUE);
+    }
+
+    /**
+     * LSD radix sort an array of doubles into the order of Arrays.sort,
+     * mapping the IEEE bits as lsdRadixSort(float[]) does.
+     * @param a the array of doubles.
+     */
+    public static void lsdRadixSort(double[] a){
+        long[] keys = new long[a.length];
+        for(int i = 0; i < a.length; i++){
+            long bits = Double.doubleToLongBits(a[i]);
+            keys[i] = bits ^ (bits >> 63 | Long.MIN_VALUE);
+        }
+        lsdRadixSort(keys, null, 0L);
+        for(int i = 0; i < a.length; i++){
+            long bits = keys[i];
+            a[i] = Double.longBitsToDouble(bits ^ (~bits >> 63 | Long.MIN_VALUE));
+        }
+    }
+
+    /**
+     * Internal LSD radix sort of longs.
+     * @param payload moved along with the keys, or null.
+     * @param flip Long.MIN_VALUE to sort signed, 0 to sort unsigned.
+     */
+    private static void lsdRadixSort(long[] a, int[] payload, long flip){
+        int n = a.length;
+        if(n < LSD_CUTOFF){
+            insertionSort(a, payload, flip);
+            return;
+        }
+        int[][] count = new int[8][BYTE_BUCKETS];
+        for(long x: a){
+            x ^= flip;
+            for(int pass = 0; pass < 8; pass++){
+                count[pass][(int)(x >>> 8 * pass) & 0xFF]++;
+            }
+        }
+        long[] in = a;
+        long[] out = null;
+        int[] inPayload = payload;
+        int[] outPayload = null;
+        for(int pass = 0; pass < 8; pass++){
+            int shift = 8 * pass;
+            int[] c = count[pass];
+            if(c[(int)((a[0] ^ flip) >>> shift) & 0xFF] == n){
+                continue;
+            }
+            if(out == null){
+                out = new long[n];
+                outPayload = payload == null ? null : new int[n];
+            }
+            for(int b = 0, sum = 0; b < BYTE_BUCKETS; b++){
+                int tmp = c[b];
+                c[b] = sum;
+                sum += tmp;
+            }
+            for(int i = 0; i < n; i++){
+                int pos = c[(int)((in[i] ^ flip) >>> shift) & 0xFF]++;
+                out[pos] = in[i];
+                if(payload != null){
+                    outPayload[pos] = inPayload[i];
+                }
+            }
+            long[] tmp = in;
+            in = out;
+            out = tmp;
+            int[] tmpPayload = inPayload;
+            inPayload = outPayload;
+            outPayload = tmpPayload;
+        }
+        if(in != a){
+            System.arraycopy(in, 0, a, 0, n);
+            if(payload != null){
+                System.arraycopy(inPayload, 0, payload, 0, n);
+            }
+        }
+    }
+
+    private static void insertionSort(long[] a, int[] payload, long flip){
+        for(int p = 1; p < a.length; p++){
+            long tmp = a[p];
+            int tmpPayload = payload == null ? 0 : payload[p];
+            int j = p;
+            for( ; j > 0 && Long.compareUnsigned(tmp ^ flip, a[j - 1] ^ flip) < 0; j--){
+                a[j] = a[j - 1];
+                if(payload != null){
+                    payload[j] = payload[j - 1];
+                }
+            }
+            a[j] = tmp;
+            if(payload != null){
+                payload[j] = tmpPayload;
+            }
+        }
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;    // Smaller arrays are sorted sequentially
+
+    /**
+     * Parallel LSD radix sort of an array of ints, on the common ForkJoinPool
+     * with one block per worker.
+     * @param a the array of ints.
+     */
+    public static void parallelLsdRadixSort(int[] a){
+        parallelLsdRadixSort(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Parallel LSD radix sort of an array of ints.
+     * The array is cut into blocks. In each pass every block counts its own
+     * digits into a private histogram; prefix sums over (digit, block) in
+     * that order give every block its own starting offset in each bucket,
+     * so the blocks then scatter in parallel without sharing a counter, and
+     * the sort stays stable. Passes whose digit every key shares are skipped.
+     * @param a the array of ints.
+     * @param blocks the number of blocks, normally the number of workers.
+     */
+    public static void parallelLsdRadixSort(int[] a, int blocks){
+        int n = a.length;
+        if(n < PARALLEL_THRESHOLD || blocks < 2){
+            lsdRadixSort(a);
+            return;
+        }
+        int[][] counts = new int[blocks][BYTE_BUCKETS];
+        int[] in = a;
+        int[] out = new int[n];
+        for(int shift = 0; shift < 32; shift += 8){
+            final int[] src = in;
+            final int[] dst = out;
+            final int sh = shift;
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                Arrays.fill(c, 0);
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    c[(src[i] ^ Integer.MIN_VALUE) >>> sh & 0xFF]++;
+                }
+            });
+            if(!blockOffsets(counts, n)){
+                continue;
+            }
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    dst[c[(src[i] ^ Integer.MIN_VALUE) >>> sh & 0xFF]++] = src[i];
+                }
+            });
+            in = dst;
+            out = src;
+        }
+        if(in != a){
+            System.arraycopy(in, 0, a, 0, n);
+        }
+    }
+
+    /**
+     * Parallel LSD radix sort of an array of longs, on the common ForkJoinPool
+     * with one block per worker.
+     * @param a the array of longs.
+     */
+    public static void parallelLsdRadixSort(long[] a){
+        parallelLsdRadixSort(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Parallel LSD radix sort of an array of longs, as parallelLsdRadixSort(int[], int).
+     * @param a the array of longs.
+     * @param blocks the number of blocks, normally the number of workers.
+     */
+    public static void parallelLsdRadixSort(long[] a, int blocks){
+        int n = a.length;
+        if(n < PARALLEL_THRESHOLD || blocks < 2){
+            lsdRadixSort(a);
+            return;
+        }
+        int[][] counts = new int[blocks][BYTE_BUCKETS];
+        long[] in = a;
+        long[] out = new long[n];
+        for(int shift = 0; shift < 64; shift += 8){
+            final long[] src = in;
+            final long[] dst = out;
+            final int sh = shift;
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                Arrays.fill(c, 0);
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    c[(int)((src[i] ^ Long.MIN_VALUE) >>> sh) & 0xFF]++;
+                }
+            });
+            if(!blockOffsets(counts, n)){
+                continue;
+            }
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    dst[c[(int)((src[i] ^ Long.MIN_VALUE) >>> sh) & 0xFF]++] = src[i];
+                }
+            });
+            in = dst;
+            out = src;
+        }
+        if(in != a){
+            System.arraycopy(in, 0, a, 0, n);
+        }
+    }
+
+    /**
+     * Parallel counting radix sort of an array of Strings, with the same
+     * assumptions as countingRadixSort: all ASCII, all of the same length.
+     * Each pass counts and scatters block by block as in
+     * parallelLsdRadixSort(int[], int).
+     * @param arr the array of Strings.
+     * @param stringLen the length of every String.
+     * @param blocks the number of blocks, normally the number of workers.
+     */
+    public static void parallelCountingRadixSort(String[] arr, int stringLen, int blocks){
+        int n = arr.length;
+        if(n < PARALLEL_THRESHOLD || blocks < 2){
+            countingRadixSort(arr, stringLen);
+            return;
+        }
+        int[][] counts = new int[blocks][BYTE_BUCKETS];
+        String[] in = arr;
+        String[] out = new String[n];
+        for(int pos = stringLen - 1; pos >= 0; pos--){
+            final String[] src = in;
+            final String[] dst = out;
+            final int p = pos;
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                Arrays.fill(c, 0);
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    c[src[i].charAt(p)]++;
+                }
+            });
+            if(!blockOffsets(counts, n)){
+                continue;
+            }
+            forEachBlock(blocks, t -> {
+                int[] c = counts[t];
+                for(int i = blockStart(n, blocks, t), end = blockStart(n, blocks, t + 1); i < end; i++){
+                    dst[c[src[i].charAt(p)]++] = src[i];
+                }
+            });
+            in = dst;
+            out = src;
+        }
+        if(in != arr){
+            System.arraycopy(in, 0, arr, 0, n);
+        }
+    }
+
+    /**
+     * Parallel counting radix sort on the common ForkJoinPool, one block per worker.
+     */
+    public static void parallelCountingRadixSort(String[] arr, int stringLen){
+        parallelCountingRadixSort(arr, stringLen, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @return the first index of block t when n items are cut into blocks.
+     */
+    private static int blockStart(int n, int blocks, int t){
+        return (int)((long) n * t / blocks);
+    }
+
+    /**
+     * Turn per-block digit counts into per-block starting offsets: block t
+     * writes digit b after every smaller digit, and after the digit b
+     * items of blocks 0..t-1.
+     * @return false, leaving the counts alone, if one digit holds all n items.
+     */
+    private static boolean blockOffsets(int[][] counts, int n){
+        for(int b = 0; b < BYTE_BUCKETS; b++){
+            int total = 0;
+            for(int[] c: counts){
+                total += c[b];
+            }
+            if(total == n){
+                return false;
+            }
+            if(total != 0){
+                break;
+            }
+        }
+        for(int b = 0, sum = 0; b < BYTE_BUCKETS; b++){
+            for(int[] c: counts){
+                int tmp = c[b];
+                c[b] = sum;
+                sum += tmp;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run body for every block 0..blocks-1 on the common ForkJoinPool and wait for all.
+     */
+    private static void forEachBlock(int blocks, IntConsumer body){
+        ForkJoinPool.commonPool().invoke(new BlockTask(0, blocks, body));
+    }
+
+    private static class BlockTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        BlockTask(int from, int to, IntConsumer body){
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        protected void compute(){
+            if(to - from == 1){
+                body.accept(from);
+            }else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(from, mid, body), new BlockTask(mid, to, body));
+            }
+        }
+    }
+
     public static void main(String[] args) {
         Random r = new Random();
         List<String> lst = new ArrayList<>();
@@ -147,5 +891,168 @@ public class RadixSort {
                 System.out.println("OOPS!!");
             }
         }
+
+        // Variable-length keys: URLs with long shared prefixes, and text in any script
+        final int NUM_KEYS = 500000;
+        String[] hosts = { "https://www.example.com/", "https://www.example.com/static/", "https://api.example.org/v2/" };
+        String[][] datasets = new String[2][NUM_KEYS];
+        for(int i = 0; i < NUM_KEYS; i++){
+            StringBuilder sb = new StringBuilder(hosts[r.nextInt(hosts.length)]);
+            int segments = 1 + r.nextInt(4);
+            for(int j = 0; j < segments; j++){
+                sb.append("section-").append(r.nextInt(50)).append('/');
+            }
+            datasets[0][i] = sb.append("item?id=").append(r.nextInt(1000000)).toString();
+            sb.setLength(0);
+            int len = r.nextInt(12);
+            for(int j = 0; j < len; j++){
+                // Latin, CJK and surrogate pairs, which compare as UTF-16 units
+                int kind = r.nextInt(4);
+                sb.append(kind == 0 ? (char)('a' + r.nextInt(3)) : kind == 1 ? (char)(0x4E00 + r.nextInt(64))
+                        : kind == 2 ? (char)(0xD800 + r.nextInt(4)) : (char)(0xDC00 + r.nextInt(4)));
+            }
+            datasets[1][i] = sb.toString();
+        }
+        String[] names = { "URLs", "Unicode" };
+        for(int set = 0; set < datasets.length; set++){
+            String[] expected = datasets[set].clone();
+            start = System.currentTimeMillis();
+            Arrays.sort(expected);
+            end = System.currentTimeMillis();
+            long library = end - start;
+
+            String[] msd = datasets[set].clone();
+            start = System.currentTimeMillis();
+            msdRadixSort(msd);
+            end = System.currentTimeMillis();
+            long radix = end - start;
+
+            String[] multikey = datasets[set].clone();
+            start = System.currentTimeMillis();
+            multikeyQuicksort(multikey);
+            end = System.currentTimeMillis();
+            long threeWay = end - start;
+
+            byte[][] bytes = new byte[NUM_KEYS][];
+            for(int i = 0; i < NUM_KEYS; i++){
+                bytes[i] = datasets[set][i].getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            }
+            start = System.currentTimeMillis();
+            msdRadixSort(bytes);
+            end = System.currentTimeMillis();
+            long byteRadix = end - start;
+
+            for(int i = 0; i < NUM_KEYS; i++){
+                if(!expected[i].equals(msd[i]) || !expected[i].equals(multikey[i])){
+                    System.out.println("OOPS!! " + names[set] + " at " + i);
+                    break;
+                }
+                if(i > 0 && compareFrom(bytes[i - 1], bytes[i], 0) > 0){
+                    System.out.println("OOPS!! " + names[set] + " bytes at " + i);
+                    break;
+                }
+            }
+            System.out.println(names[set] + ": Arrays.sort " + library + "ms, msdRadixSort " + radix
+                    + "ms, multikeyQuicksort " + threeWay + "ms, msdRadixSort(byte[][]) " + byteRadix + "ms");
+        }
+
+        // Primitive keys: millisecond timestamps within a day share their high bytes
+        final int NUM_PRIMITIVES = 10_000_000;
+        long[][] longKeys = new long[2][NUM_PRIMITIVES];
+        double[] doubles = new double[NUM_PRIMITIVES];
+        for(int i = 0; i < NUM_PRIMITIVES; i++){
+            longKeys[0][i] = 1_500_000_000_000L + r.nextInt(86_400_000);
+            longKeys[1][i] = r.nextLong();
+            doubles[i] = r.nextGaussian();
+        }
+        String[] longNames = { "timestamps", "random longs" };
+        for(int set = 0; set < longKeys.length; set++){
+            long[] expected = longKeys[set].clone();
+            start = System.currentTimeMillis();
+            Arrays.sort(expected);
+            end = System.currentTimeMillis();
+            long library = end - start;
+            long[] radix = longKeys[set].clone();
+            start = System.currentTimeMillis();
+            lsdRadixSort(radix);
+            end = System.currentTimeMillis();
+            long lsd = end - start;
+            long[] keys = longKeys[set].clone();
+            int[] payload = new int[NUM_PRIMITIVES];
+            for(int i = 0; i < NUM_PRIMITIVES; i++){
+                payload[i] = i;
+            }
+            start = System.currentTimeMillis();
+            lsdRadixSort(keys, payload);
+            end = System.currentTimeMillis();
+            long withPayload = end - start;
+            if(!Arrays.equals(expected, radix) || !Arrays.equals(expected, keys)){
+                System.out.println("OOPS!! " + longNames[set]);
+            }
+            for(int i = 0; i < NUM_PRIMITIVES; i++){
+                if(longKeys[set][payload[i]] != keys[i]){
+                    System.out.println("OOPS!! payload at " + i);
+                    break;
+                }
+            }
+            System.out.println(longNames[set] + ": Arrays.sort " + library + "ms, lsdRadixSort " + lsd
+                    + "ms, with int payload " + withPayload + "ms");
+        }
+        double[] expectedDoubles = doubles.clone();
+        start = System.currentTimeMillis();
+        Arrays.sort(expectedDoubles);
+        end = System.currentTimeMillis();
+        long library = end - start;
+        start = System.currentTimeMillis();
+        lsdRadixSort(doubles);
+        end = System.currentTimeMillis();
+        if(!Arrays.equals(expectedDoubles, doubles)){
+            System.out.println("OOPS!! doubles");
+        }
+        System.out.println("doubles: Arrays.sort " + library + "ms, lsdRadixSort " + (end - start) + "ms");
+
+        // Parallel against sequential; 8 blocks even on fewer cores, to exercise the offsets
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        System.out.println("Parallel radix sorts, parallelism " + parallelism);
+        long[] sequential = longKeys[1].clone();
+        start = System.currentTimeMillis();
+        lsdRadixSort(sequential);
+        end = System.currentTimeMillis();
+        long sequentialTime = end - start;
+        for(int blocks: new int[]{ parallelism, 8 }){
+            long[] parallel = longKeys[1].clone();
+            start = System.currentTimeMillis();
+            parallelLsdRadixSort(parallel, blocks);
+            end = System.currentTimeMillis();
+            if(!Arrays.equals(sequential, parallel)){
+                System.out.println("OOPS!! parallel longs, " + blocks + " blocks");
+            }
+            System.out.println("random longs: lsdRadixSort " + sequentialTime + "ms, parallelLsdRadixSort, "
+                    + blocks + " blocks " + (end - start) + "ms");
+        }
+        String[] fixed = new String[NUM_KEYS * 4];
+        for(int i = 0; i < fixed.length; i++){
+            char[] chars = new char[LEN];
+            for(int j = 0; j < LEN; j++){
+                chars[j] = (char)('a' + r.nextInt(26));
+            }
+            fixed[i] = new String(chars);
+        }
+        String[] sequentialStrings = fixed.clone();
+        start = System.currentTimeMillis();
+        countingRadixSort(sequentialStrings, LEN);
+        end = System.currentTimeMillis();
+        sequentialTime = end - start;
+        for(int blocks: new int[]{ parallelism, 8 }){
+            String[] parallel = fixed.clone();
+            start = System.currentTimeMillis();
+            parallelCountingRadixSort(parallel, LEN, blocks);
+            end = System.currentTimeMillis();
+            if(!Arrays.equals(sequentialStrings, parallel)){
+                System.out.println("OOPS!! parallel strings, " + blocks + " blocks");
+            }
+            System.out.println(fixed.length + " strings: countingRadixSort " + sequentialTime
+                    + "ms, parallelCountingRadixSort, " + blocks + " blocks " + (end - start) + "ms");
+        }
     }
 }
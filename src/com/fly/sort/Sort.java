@@ -1,11 +1,18 @@
 package com.fly.sort;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A class that contains several sorting routines,
  * implemented as static methods.
  * Arrays are rearranged with smallest item first,
  * using compareTo.
+ * Each routine is also overloaded for int[], long[] and double[],
+ * compared with <, and for object arrays with a Comparator.
+ * The double[] routines move any NaN values to the end first.
  * Created by Fanliyan on 2017/6/3.
  */
 public class Sort {
@@ -54,24 +61,25 @@ public class Sort {
     /**
      * Internal method for heapsort that is used in deleteMax and buildHeap.
      * @param a an array of Comparable items.
-     * @index i the position from which to percolate down.
-     * @int n the logical size of the binary heap.
+     * @param left the index of the heap root; i and n are relative to it.
+     * @param i the position from which to percolate down.
+     * @param n the logical size of the binary heap.
      */
-    private static <AnyType extends Comparable<? super AnyType>> void percDown(AnyType[] a, int i, int n){
+    private static <AnyType extends Comparable<? super AnyType>> void percDown(AnyType[] a, int left, int i, int n){
         int child;
         AnyType tmp;
-        for(tmp = a[i]; leftChild(i) < n; i =child){
+        for(tmp = a[left + i]; leftChild(i) < n; i =child){
             child = leftChild(i);
-            if(child !=  n - 1 && a[child].compareTo(a[child + 1]) < 0){
+            if(child !=  n - 1 && a[left + child].compareTo(a[left + child + 1]) < 0){
                 child++;
             }
-            if(tmp.compareTo(a[child]) < 0){
-                a[i] = a[child];
+            if(tmp.compareTo(a[left + child]) < 0){
+                a[left + i] = a[left + child];
             }else {
                 break;
             }
         }
-        a[i] = tmp;
+        a[left + i] = tmp;
     }
 
     /**
@@ -79,11 +87,23 @@ public class Sort {
      * @param a an array of Comparable items.
      */
     public static <AnyType extends Comparable<? super AnyType>> void heapsort(AnyType[] a){
-        for(int i = a.length / 2 - 1; i >= 0; i--){  /* buildHeap */
-            percDown(a, i, a.length);
+        heapsort(a, 0, a.length - 1);
+    }
+
+    /**
+     * Internal heapsort method for subarrays.
+     * @param a an array of Comparable items.
+     * @param left the left-most index of the subarray.
+     * @param right the right-most index of the subarray.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void heapsort(AnyType[] a, int left, int right){
+        int n = right - left + 1;
+        for(int i = n / 2 - 1; i >= 0; i--){  /* buildHeap */
+            percDown(a, left, i, n);
         }
-        for(int i = a.length - 1; i > 0; i--){    /* deleteMax */
-            swapReferences(a, 0, i);
+        for(int i = n - 1; i > 0; i--){    /* deleteMax */
+            swapReferences(a, left, left + i);
+            percDown(a, left, 0, i);
         }
     }
 
@@ -104,11 +124,13 @@ public class Sort {
      * @param right the right-most index of the subarray.
      */
     private  static <AnyType extends Comparable<? super AnyType>> void mergeSort(AnyType[] a, AnyType[] tmpArray, int left, int right){
-        if(left < right){
+        if(left + CUTOFF <= right){
             int center = (left + right) / 2;
             mergeSort(a, tmpArray, left, center);
             mergeSort(a, tmpArray, center + 1, right);
             merge(a, tmpArray, left, center + 1, right);
+        }else {    // Do an insertion sort on the subarray
+            insertionSort(a, left, right);
         }
     }
 
@@ -135,7 +157,7 @@ public class Sort {
             }
         }
         while (leftPos <= leftEnd){   // Copy rest of first half
-            tmpArray[tmpPos++] = a[rightPos++];
+            tmpArray[tmpPos++] = a[leftPos++];
         }
         while (rightPos <= rightEnd){
             tmpArray[tmpPos++] = a[rightPos++];
@@ -180,7 +202,7 @@ public class Sort {
             swapReferences(a, left, right);
         }
         if(a[right].compareTo(a[center]) < 0){
-            swapReferences(a, center, right - 1);
+            swapReferences(a, center, right);
         }
         swapReferences(a, center, right - 1);
         return a[right - 1];
@@ -195,27 +217,39 @@ public class Sort {
      */
     private static <AnyType extends Comparable<? super AnyType>> void quicksort(AnyType[] a, int left, int right){
         if(left + CUTOFF <= right){
-            AnyType pivot = median3(a, left, right);
-            // Begin partitioning
-            int i = left, j = right - 1;
-            for(;;){
-                while (a[++i].compareTo(pivot) < 0){}
-                while (a[--j].compareTo(pivot) > 0){}
-                if(i < j){
-                    swapReferences(a, i, j);
-                }else {
-                    break;
-                }
-                swapReferences(a, i, right - 1); // Restore pivot
-
-                quicksort(a, left, i - 1);  // Sort small elements
-                quicksort(a, i + 1, right);  // Sort large elements
-            }
+            int i = partition(a, left, right);
+            quicksort(a, left, i - 1);  // Sort small elements
+            quicksort(a, i + 1, right);  // Sort large elements
         }else {    // Do an insertion sort on the subarray
             insertionSort(a, left, right);
         }
     }
 
+    /**
+     * Internal method that partitions a subarray of at least
+     * CUTOFF + 1 items around a median-of-three pivot.
+     * @param a an array of Comparable items.
+     * @param left the left-most index of the subarray.
+     * @param right the right-most index of the subarray.
+     * @return the final position of the pivot.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int partition(AnyType[] a, int left, int right){
+        AnyType pivot = median3(a, left, right);
+        // Begin partitioning
+        int i = left, j = right - 1;
+        for(;;){
+            while (a[++i].compareTo(pivot) < 0){}
+            while (a[--j].compareTo(pivot) > 0){}
+            if(i < j){
+                swapReferences(a, i, j);
+            }else {
+                break;
+            }
+        }
+        swapReferences(a, i, right - 1); // Restore pivot
+        return i;
+    }
+
     /**
      * Internal insertion sort routine for subarrays
      * that is used by quicksort.
@@ -246,82 +280,2203 @@ public class Sort {
 
     private static <AnyType extends Comparable<? super AnyType>> void quickSelect(AnyType[] a, int left, int right, int k){
         if(left + CUTOFF <= right){
-            AnyType pivot = median3(a, left, right);
-            // Begin partitioning
-            int i = left, j = right - 1;
-            for(;;){
-                while (a[++i].compareTo(pivot) < 0){}
-                while (a[--j].compareTo(pivot) > 0){}
-                if(i < j){
-                    swapReferences(a, i, j);
-                }else {
-                    break;
-                }
-                swapReferences(a, i, right - 1);  // Restore pivot
-                if(k <= i){
-                    quickSelect(a, left, i - 1, k);
-                }else if(k > i + 1){
-                    quickSelect(a, i + 1, right, k);
-                }
+            int i = partition(a, left, right);
+            if(k <= i){
+                quickSelect(a, left, i - 1, k);
+            }else if(k > i + 1){
+                quickSelect(a, i + 1, right, k);
             }
         }else {  // Do an insertion sort on the subarray
             insertionSort(a, left, right);
         }
     }
 
-    private static final int NUM_ITEMS = 1000;
-    private static int theSeed = 1;
+    /**
+     * Introspective selection.
+     * Places the kth smallest item in a[k-1], like quickSelect, but once
+     * the median-of-three partitions have failed to converge within
+     * 2 log N rounds it switches to median-of-medians pivots, so the
+     * worst case is linear.
+     * @param a an array of Comparable items.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void introSelect(AnyType[] a, int k){
+        int left = 0, right = a.length - 1;
+        int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(a.length));
+        while (left + CUTOFF <= right){
+            if(depthLimit-- == 0){
+                momSelect(a, left, right, k - 1);
+                return;
+            }
+            int i = partition(a, left, right);
+            if(k <= i){
+                right = i - 1;
+            }else if(k > i + 1){
+                left = i + 1;
+            }else {
+                return;
+            }
+        }
+        insertionSort(a, left, right);
+    }
 
-    private static void checkSort(Integer[] a){
-        for(int i = 0; i < a.length; i++){
-            if(a[i] != i){
-                System.out.println("Error at " + i);
+    /**
+     * Internal selection method using median-of-medians pivots
+     * and three-way partitioning.
+     * @param index the position, not the rank, to fill.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void momSelect(AnyType[] a, int left, int right, int index){
+        int[] bounds = new int[2];
+        while (left + CUTOFF <= right){
+            AnyType pivot = a[medianOfMedians(a, left, right)];
+            partition3(a, left, right, pivot, bounds);
+            if(index < bounds[0]){
+                right = bounds[0] - 1;
+            }else if(index > bounds[1]){
+                left = bounds[1] + 1;
+            }else {
+                return;
             }
         }
-        System.out.println("Finished checksort");
+        insertionSort(a, left, right);
     }
 
-    public static void main(String[] args) {
-        Integer[] a = new Integer[NUM_ITEMS];
-        for (int i = 0; i < a.length; i++) {
-            a[i] = i;
+    /**
+     * Internal method that moves the median of each group of five to
+     * the front of the subarray and selects the median of those.
+     * @return the position of the median of medians.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int medianOfMedians(AnyType[] a, int left, int right){
+        int medians = left;
+        for(int i = left; i <= right; i += 5){
+            int end = Math.min(i + 4, right);
+            insertionSort(a, i, end);
+            swapReferences(a, medians++, (i + end) / 2);
         }
-        for(theSeed = 0; theSeed < 20; theSeed++){
-            Random.permute(a);
-            Sort.insertionSort(a);
-            checkSort(a);
+        int mid = (left + medians - 1) / 2;
+        momSelect(a, left, medians - 1, mid);
+        return mid;
+    }
 
-            Random.permute(a);
-            Sort.heapsort(a);
-            checkSort(a);
+    /**
+     * Three-way partition of a subarray around pivot.
+     * @param bounds set to the first and last positions of the items equal to pivot.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void partition3(AnyType[] a, int left, int right,
+            AnyType pivot, int[] bounds){
+        int lt = left, i = left, gt = right;
+        while (i <= gt){
+            int cmp = a[i].compareTo(pivot);
+            if(cmp < 0){
+                swapReferences(a, lt++, i++);
+            }else if(cmp > 0){
+                swapReferences(a, i, gt--);
+            }else {
+                i++;
+            }
+        }
+        bounds[0] = lt;
+        bounds[1] = gt;
+    }
 
-            Random.permute(a);
-            Sort.shellsort(a);
-            checkSort(a);
+    /**
+     * Floyd-Rivest selection.
+     * Places the kth smallest item in a[k-1]. On large ranges a small
+     * sample around the expected position of the kth item is selected
+     * first, so its pivot lands very close to rank k and the partition
+     * leaves little work; about N + min(k, N - k) comparisons on average.
+     * @param a an array of Comparable items.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void floydRivestSelect(AnyType[] a, int k){
+        floydRivestSelect(a, 0, a.length - 1, k - 1);
+    }
 
-            Random.permute(a);
-            Sort.mergeSort(a);
-            checkSort(a);
+    private static final int FLOYD_RIVEST_SAMPLE = 600;     // Ranges above this size are sampled
 
-            Random.permute(a);
-            Sort.quicksort(a);
-            checkSort(a);
+    /**
+     * Internal Floyd-Rivest method.
+     * @param index the position, not the rank, to fill.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void floydRivestSelect(AnyType[] a, int left, int right, int index){
+        while (right > left){
+            if(right - left > FLOYD_RIVEST_SAMPLE){
+                // Recurse on a sample of size about N^(2/3) placed so that
+                // a[index] afterwards is a good estimate of the answer
+                int n = right - left + 1;
+                int i = index - left + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2 * z / 3);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * Math.signum(i - n / 2.0);
+                int newLeft = Math.max(left, (int)(index - i * s / n + sd));
+                int newRight = Math.min(right, (int)(index + (n - i) * s / n + sd));
+                // The estimate assumes the range is in random order, which an
+                // earlier selection on the same array breaks, so the sample is
+                // spread evenly over the whole range rather than taken in place
+                int width = newRight - newLeft + 1;
+                for(int p = newLeft; p <= newRight; p++){
+                    swapReferences(a, p, left + (int)((long)(p - newLeft) * n / width));
+                }
+                floydRivestSelect(a, newLeft, newRight, index);
+            }
+            AnyType t = a[index];
+            int i = left;
+            int j = right;
+            swapReferences(a, left, index);
+            if(a[right].compareTo(t) > 0){
+                swapReferences(a, right, left);
+            }
+            while (i < j){
+                swapReferences(a, i, j);
+                i++;
+                j--;
+                while (a[i].compareTo(t) < 0){
+                    i++;
+                }
+                while (a[j].compareTo(t) > 0){
+                    j--;
+                }
+            }
+            if(a[left].compareTo(t) == 0){
+                swapReferences(a, left, j);
+            }else {
+                j++;
+                swapReferences(a, j, right);
+            }
+            // a[j] now holds t in its final place
+            if(j <= index){
+                left = j + 1;
+            }
+            if(index <= j){
+                right = j - 1;
+            }
+        }
+    }
 
-            Random.permute(a);
-            Sort.quickSelect(a, NUM_ITEMS / 2);
-            System.out.println(a[NUM_ITEMS / 2 - 1] + " " + NUM_ITEMS / 2);
+    /**
+     * Selection of several ranks at once.
+     * Places the kth smallest item in a[k-1] for every k in ks. Each
+     * partition is shared by all the ranks on either side of it, so
+     * asking for p50, p90, p99 and p999 together costs little more
+     * than a single selection.
+     * @param a an array of Comparable items.
+     * @param ks the desired ranks (1 is minimum), in any order.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void multiSelect(AnyType[] a, int[] ks){
+        int[] ranks = ks.clone();
+        Arrays.sort(ranks);
+        multiSelect(a, 0, a.length - 1, ranks, 0, ranks.length - 1,
+                2 * (32 - Integer.numberOfLeadingZeros(a.length)));
+    }
+
+    /**
+     * Internal multiSelect method.
+     * @param ranks sorted ranks; ranks[lo..hi] are the ones inside a[left..right].
+     * @param depthLimit partitions left before the subarray is simply heapsorted.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void multiSelect(AnyType[] a, int left, int right,
+            int[] ranks, int lo, int hi, int depthLimit){
+        while (lo <= hi){
+            if(left + CUTOFF > right){
+                insertionSort(a, left, right);
+                return;
+            }
+            if(depthLimit-- == 0){
+                heapsort(a, left, right);
+                return;
+            }
+            int i = partition(a, left, right);
+            // Ranks up to i belong left of the pivot, rank i + 1 is the pivot itself
+            int split = lo;
+            while (split <= hi && ranks[split] <= i){
+                split++;
+            }
+            int rest = split;
+            while (rest <= hi && ranks[rest] == i + 1){
+                rest++;
+            }
+            if(split - lo < hi - rest + 1){
+                multiSelect(a, left, i - 1, ranks, lo, split - 1, depthLimit);
+                left = i + 1;
+                lo = rest;
+            }else {
+                multiSelect(a, i + 1, right, ranks, rest, hi, depthLimit);
+                right = i - 1;
+                hi = split - 1;
+            }
         }
+    }
 
-        Integer[] b = new Integer[10_000_000];
-        for (int i = 0; i < b.length; i++) {
-            b[i] = i;
+    private static final int MIN_MERGE = 32;    // Arrays shorter than this are binary insertion sorted
+    private static final int MIN_GALLOP = 7;    // Initial wins in a row before a merge starts galloping
+
+    /**
+     * Adaptive natural mergesort in the style of TimSort.
+     * Existing ascending runs, and strictly descending runs after reversal,
+     * are merged as they are; short runs are extended to a minimum length
+     * by binary insertion sort. Merges gallop when one run keeps winning,
+     * so nearly sorted input takes close to linear time. Stable, and the
+     * temporary buffer never exceeds N / 2 items.
+     * @param a an array of Comparable items.
+     * @throws IllegalArgumentException if compareTo is found to be inconsistent.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void adaptiveMergeSort(AnyType[] a){
+        int n = a.length;
+        if(n < 2){
+            return;
         }
-        Random.permute(b);
-        long start = System.currentTimeMillis();
-        Sort.quickSelect(b, b.length / 2);
-        long end = System.currentTimeMillis();
-        System.out.println("Timing for Section 1.1 example: ");
-        System.out.println("Selection for N = " + b.length + " takes " + (end - start) + "ms.");
-        System.out.println(b[b.length / 2 - 1] + " " + b.length / 2);
+        if(n < MIN_MERGE){
+            binaryInsertionSort(a, 0, n, countRunAndMakeAscending(a, 0, n));
+            return;
+        }
+        RunMerger<AnyType> merger = new RunMerger<>(a);
+        int minRun = minRunLength(n);
+        int lo = 0;
+        while (lo < n){
+            int run = countRunAndMakeAscending(a, lo, n);
+            if(run < minRun){
+                int force = Math.min(n - lo, minRun);
+                binaryInsertionSort(a, lo, lo + force, lo + run);
+                run = force;
+            }
+            merger.pushRun(lo, run);
+            merger.mergeCollapse();
+            lo += run;
+        }
+        merger.mergeForceCollapse();
+    }
+
+    /**
+     * Internal method that finds the run starting at a[lo], reversing it
+     * if it is strictly descending (so that stability is kept).
+     * @param hi one past the last index that may belong to the run.
+     * @return the length of the run.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int countRunAndMakeAscending(AnyType[] a, int lo, int hi){
+        int runHi = lo + 1;
+        if(runHi == hi){
+            return 1;
+        }
+        if(a[runHi++].compareTo(a[lo]) < 0){
+            while (runHi < hi && a[runHi].compareTo(a[runHi - 1]) < 0){
+                runHi++;
+            }
+            for(int i = lo, j = runHi - 1; i < j; i++, j--){
+                swapReferences(a, i, j);
+            }
+        }else {
+            while (runHi < hi && a[runHi].compareTo(a[runHi - 1]) >= 0){
+                runHi++;
+            }
+        }
+        return runHi - lo;
+    }
+
+    /**
+     * Internal method that sorts a[lo..hi-1] given that a[lo..start-1] is
+     * already sorted, finding each insertion point by binary search.
+     * Equal items are inserted after their equals, which keeps it stable.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void binaryInsertionSort(AnyType[] a, int lo, int hi, int start){
+        for( ; start < hi; start++){
+            AnyType tmp = a[start];
+            int pos = upperBound(a, lo, start, tmp);
+            System.arraycopy(a, pos, a, pos + 1, start - pos);
+            a[pos] = tmp;
+        }
+    }
+
+    /**
+     * Minimum run length for an array of n items: n itself below MIN_MERGE,
+     * otherwise a length between MIN_MERGE / 2 and MIN_MERGE such that
+     * n / minRun is, or is just below, a power of two, which balances the merges.
+     */
+    private static int minRunLength(int n){
+        int r = 0;
+        while (n >= MIN_MERGE){
+            r |= n & 1;
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    /**
+     * The pending runs of an adaptiveMergeSort and the buffer used to merge them.
+     * The stack keeps runLen[i - 2] > runLen[i - 1] + runLen[i] and
+     * runLen[i - 1] > runLen[i], so run lengths grow at least as fast as
+     * the Fibonacci numbers and 49 entries are enough for any int length.
+     */
+    private static class RunMerger<AnyType extends Comparable<? super AnyType>> {
+        private final AnyType[] a;
+        private AnyType[] tmpArray;
+        private int minGallop = MIN_GALLOP;
+        private final int[] runBase = new int[49];
+        private final int[] runLen = new int[49];
+        private int stackSize = 0;
+
+        RunMerger(AnyType[] a){
+            this.a = a;
+            tmpArray = (AnyType[]) new Comparable[a.length < 512 ? a.length >>> 1 : 256];
+        }
+
+        void pushRun(int base, int len){
+            runBase[stackSize] = base;
+            runLen[stackSize] = len;
+            stackSize++;
+        }
+
+        /**
+         * Merge adjacent runs until the stack invariants hold again.
+         * The check reaches back three runs, not two, since the shorter
+         * check can let the invariant fail deeper in the stack.
+         */
+        void mergeCollapse(){
+            while (stackSize > 1){
+                int n = stackSize - 2;
+                if(n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1]
+                        || n > 1 && runLen[n - 2] <= runLen[n] + runLen[n - 1]){
+                    if(runLen[n - 1] < runLen[n + 1]){
+                        n--;
+                    }
+                }else if(runLen[n] > runLen[n + 1]){
+                    break;
+                }
+                mergeAt(n);
+            }
+        }
+
+        /**
+         * Merge all remaining runs, leaving the array sorted.
+         */
+        void mergeForceCollapse(){
+            while (stackSize > 1){
+                int n = stackSize - 2;
+                if(n > 0 && runLen[n - 1] < runLen[n + 1]){
+                    n--;
+                }
+                mergeAt(n);
+            }
+        }
+
+        /**
+         * Merge runs i and i + 1 of the stack. Items of the first run that
+         * are already below the whole second run, and items of the second
+         * that are already above the whole first, are left where they are.
+         */
+        private void mergeAt(int i){
+            int base1 = runBase[i];
+            int len1 = runLen[i];
+            int base2 = runBase[i + 1];
+            int len2 = runLen[i + 1];
+            runLen[i] = len1 + len2;
+            if(i == stackSize - 3){
+                runBase[i + 1] = runBase[i + 2];
+                runLen[i + 1] = runLen[i + 2];
+            }
+            stackSize--;
+
+            int k = gallopRight(a[base2], a, base1, len1, 0);
+            base1 += k;
+            len1 -= k;
+            if(len1 == 0){
+                return;
+            }
+            len2 = gallopLeft(a[base1 + len1 - 1], a, base2, len2, len2 - 1);
+            if(len2 == 0){
+                return;
+            }
+            if(len1 <= len2){
+                mergeLo(base1, len1, base2, len2);
+            }else {
+                mergeHi(base1, len1, base2, len2);
+            }
+        }
+
+        /**
+         * Merge from the left, copying the first (shorter) run to tmpArray.
+         * a[base1] must be greater than a[base2], and the last item of the
+         * first run greater than every item of the second.
+         */
+        private void mergeLo(int base1, int len1, int base2, int len2){
+            AnyType[] tmp = ensureCapacity(len1);
+            System.arraycopy(a, base1, tmp, 0, len1);
+            int cursor1 = 0;
+            int cursor2 = base2;
+            int dest = base1;
+
+            a[dest++] = a[cursor2++];
+            if(--len2 == 0){
+                System.arraycopy(tmp, cursor1, a, dest, len1);
+                return;
+            }
+            if(len1 == 1){
+                System.arraycopy(a, cursor2, a, dest, len2);
+                a[dest + len2] = tmp[cursor1];
+                return;
+            }
+
+            int minGallop = this.minGallop;
+            outer:
+            for(;;){
+                int count1 = 0;     // Times in a row that the first run won
+                int count2 = 0;     // Times in a row that the second run won
+                // One item at a time until one run starts winning consistently
+                do{
+                    if(a[cursor2].compareTo(tmp[cursor1]) < 0){
+                        a[dest++] = a[cursor2++];
+                        count2++;
+                        count1 = 0;
+                        if(--len2 == 0){
+                            break outer;
+                        }
+                    }else {
+                        a[dest++] = tmp[cursor1++];
+                        count1++;
+                        count2 = 0;
+                        if(--len1 == 1){
+                            break outer;
+                        }
+                    }
+                }while ((count1 | count2) < minGallop);
+
+                // Gallop: find how far each run wins and copy that stretch at once
+                do{
+                    count1 = gallopRight(a[cursor2], tmp, cursor1, len1, 0);
+                    if(count1 != 0){
+                        System.arraycopy(tmp, cursor1, a, dest, count1);
+                        dest += count1;
+                        cursor1 += count1;
+                        len1 -= count1;
+                        if(len1 <= 1){
+                            break outer;
+                        }
+                    }
+                    a[dest++] = a[cursor2++];
+                    if(--len2 == 0){
+                        break outer;
+                    }
+                    count2 = gallopLeft(tmp[cursor1], a, cursor2, len2, 0);
+                    if(count2 != 0){
+                        System.arraycopy(a, cursor2, a, dest, count2);
+                        dest += count2;
+                        cursor2 += count2;
+                        len2 -= count2;
+                        if(len2 == 0){
+                            break outer;
+                        }
+                    }
+                    a[dest++] = tmp[cursor1++];
+                    if(--len1 == 1){
+                        break outer;
+                    }
+                    minGallop--;
+                }while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+                if(minGallop < 0){
+                    minGallop = 0;
+                }
+                minGallop += 2;     // Penalize leaving gallop mode
+            }
+            this.minGallop = minGallop < 1 ? 1 : minGallop;
+
+            if(len1 == 1){
+                System.arraycopy(a, cursor2, a, dest, len2);
+                a[dest + len2] = tmp[cursor1];   // Last item of the first run goes last
+            }else if(len1 == 0){
+                throw new IllegalArgumentException("Comparison method violates its general contract");
+            }else {
+                System.arraycopy(tmp, cursor1, a, dest, len1);
+            }
+        }
+
+        /**
+         * Merge from the right, copying the second (shorter) run to tmpArray.
+         * Preconditions as for mergeLo.
+         */
+        private void mergeHi(int base1, int len1, int base2, int len2){
+            AnyType[] tmp = ensureCapacity(len2);
+            System.arraycopy(a, base2, tmp, 0, len2);
+            int cursor1 = base1 + len1 - 1;
+            int cursor2 = len2 - 1;
+            int dest = base2 + len2 - 1;
+
+            a[dest--] = a[cursor1--];
+            if(--len1 == 0){
+                System.arraycopy(tmp, 0, a, dest - (len2 - 1), len2);
+                return;
+            }
+            if(len2 == 1){
+                dest -= len1;
+                cursor1 -= len1;
+                System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+                a[dest] = tmp[cursor2];
+                return;
+            }
+
+            int minGallop = this.minGallop;
+            outer:
+            for(;;){
+                int count1 = 0;
+                int count2 = 0;
+                do{
+                    if(tmp[cursor2].compareTo(a[cursor1]) < 0){
+                        a[dest--] = a[cursor1--];
+                        count1++;
+                        count2 = 0;
+                        if(--len1 == 0){
+                            break outer;
+                        }
+                    }else {
+                        a[dest--] = tmp[cursor2--];
+                        count2++;
+                        count1 = 0;
+                        if(--len2 == 1){
+                            break outer;
+                        }
+                    }
+                }while ((count1 | count2) < minGallop);
+
+                do{
+                    count1 = len1 - gallopRight(tmp[cursor2], a, base1, len1, len1 - 1);
+                    if(count1 != 0){
+                        dest -= count1;
+                        cursor1 -= count1;
+                        len1 -= count1;
+                        System.arraycopy(a, cursor1 + 1, a, dest + 1, count1);
+                        if(len1 == 0){
+                            break outer;
+                        }
+                    }
+                    a[dest--] = tmp[cursor2--];
+                    if(--len2 == 1){
+                        break outer;
+                    }
+                    count2 = len2 - gallopLeft(a[cursor1], tmp, 0, len2, len2 - 1);
+                    if(count2 != 0){
+                        dest -= count2;
+                        cursor2 -= count2;
+                        len2 -= count2;
+                        System.arraycopy(tmp, cursor2 + 1, a, dest + 1, count2);
+                        if(len2 <= 1){
+                            break outer;
+                        }
+                    }
+                    a[dest--] = a[cursor1--];
+                    if(--len1 == 0){
+                        break outer;
+                    }
+                    minGallop--;
+                }while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+                if(minGallop < 0){
+                    minGallop = 0;
+                }
+                minGallop += 2;
+            }
+            this.minGallop = minGallop < 1 ? 1 : minGallop;
+
+            if(len2 == 1){
+                dest -= len1;
+                cursor1 -= len1;
+                System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+                a[dest] = tmp[cursor2];     // First item of the second run goes first
+            }else if(len2 == 0){
+                throw new IllegalArgumentException("Comparison method violates its general contract");
+            }else {
+                System.arraycopy(tmp, 0, a, dest - (len2 - 1), len2);
+            }
+        }
+
+        /**
+         * Grow tmpArray to hold at least minCapacity items, doubling
+         * but never past half the array.
+         */
+        private AnyType[] ensureCapacity(int minCapacity){
+            if(tmpArray.length < minCapacity){
+                int newSize = Integer.highestOneBit(minCapacity) << 1;
+                if(newSize < 0 || newSize > a.length >>> 1){
+                    newSize = Math.max(minCapacity, a.length >>> 1);
+                }
+                tmpArray = (AnyType[]) new Comparable[newSize];
+            }
+            return tmpArray;
+        }
+    }
+
+    /**
+     * Locate the leftmost position at which to insert key into the sorted
+     * range b[base..base+len-1]. The search starts at base + hint and
+     * gallops outward (offsets 1, 3, 7, ...) before a binary search, so
+     * it is fast when the answer is near the hint.
+     * @return k such that b[base+k-1] < key <= b[base+k].
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int gallopLeft(AnyType key, AnyType[] b, int base, int len, int hint){
+        int lastOfs = 0;
+        int ofs = 1;
+        if(key.compareTo(b[base + hint]) > 0){
+            // Gallop right until b[base+hint+lastOfs] < key <= b[base+hint+ofs]
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key.compareTo(b[base + hint + ofs]) > 0){
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if(ofs <= 0){   // Overflow
+                    ofs = maxOfs;
+                }
+            }
+            if(ofs > maxOfs){
+                ofs = maxOfs;
+            }
+            lastOfs += hint;
+            ofs += hint;
+        }else {
+            // Gallop left until b[base+hint-ofs] < key <= b[base+hint-lastOfs]
+            int maxOfs = hint + 1;
+            while (ofs < maxOfs && key.compareTo(b[base + hint - ofs]) <= 0){
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if(ofs <= 0){
+                    ofs = maxOfs;
+                }
+            }
+            if(ofs > maxOfs){
+                ofs = maxOfs;
+            }
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        }
+        // Now b[base+lastOfs] < key <= b[base+ofs]; binary search between them
+        lastOfs++;
+        while (lastOfs < ofs){
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if(key.compareTo(b[base + m]) > 0){
+                lastOfs = m + 1;
+            }else {
+                ofs = m;
+            }
+        }
+        return ofs;
+    }
+
+    /**
+     * Like gallopLeft, but returns the rightmost position if the range
+     * contains items equal to key.
+     * @return k such that b[base+k-1] <= key < b[base+k].
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int gallopRight(AnyType key, AnyType[] b, int base, int len, int hint){
+        int lastOfs = 0;
+        int ofs = 1;
+        if(key.compareTo(b[base + hint]) < 0){
+            int maxOfs = hint + 1;
+            while (ofs < maxOfs && key.compareTo(b[base + hint - ofs]) < 0){
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if(ofs <= 0){
+                    ofs = maxOfs;
+                }
+            }
+            if(ofs > maxOfs){
+                ofs = maxOfs;
+            }
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        }else {
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key.compareTo(b[base + hint + ofs]) >= 0){
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if(ofs <= 0){
+                    ofs = maxOfs;
+                }
+            }
+            if(ofs > maxOfs){
+                ofs = maxOfs;
+            }
+            lastOfs += hint;
+            ofs += hint;
+        }
+        lastOfs++;
+        while (lastOfs < ofs){
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if(key.compareTo(b[base + m]) < 0){
+                ofs = m;
+            }else {
+                lastOfs = m + 1;
+            }
+        }
+        return ofs;
+    }
+
+    private static final int PDQ_INSERTION = 24;        // Ranges below this size are insertion sorted
+    private static final int PDQ_NINTHER = 128;         // Ranges above this size use a pseudomedian of nine
+    private static final int PARTIAL_INSERTION_LIMIT = 8;
+
+    /**
+     * Pattern-defeating quicksort.
+     * Runs of keys equal to an earlier pivot are split off in one pass,
+     * ranges that turn out to be already sorted are detected and skipped,
+     * and a range that keeps partitioning badly is finished by heapsort,
+     * so the worst case is O(N log N). Not stable.
+     * @param a an array of Comparable items.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void pdqsort(AnyType[] a){
+        if(a.length > 1){
+            pdqsort(a, 0, a.length - 1, 32 - Integer.numberOfLeadingZeros(a.length), true);
+        }
+    }
+
+    /**
+     * Internal pdqsort method. Recurses into the smaller side
+     * and loops on the larger one.
+     * @param badAllowed unbalanced partitions left before switching to heapsort.
+     * @param leftmost true if no item of a precedes the range; otherwise
+     *        a[left - 1] is an earlier pivot, no greater than any item in it.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void pdqsort(AnyType[] a, int left, int right,
+            int badAllowed, boolean leftmost){
+        for(;;){
+            int size = right - left + 1;
+            if(size < PDQ_INSERTION){
+                insertionSort(a, left, right);
+                return;
+            }
+
+            // Move the pivot to a[left]
+            int center = left + size / 2;
+            if(size > PDQ_NINTHER){
+                sort3(a, left, center, right);
+                sort3(a, left + 1, center - 1, right - 1);
+                sort3(a, left + 2, center + 1, right - 2);
+                sort3(a, center - 1, center, center + 1);
+                swapReferences(a, left, center);
+            }else {
+                sort3(a, center, left, right);
+            }
+
+            // The pivot equals the earlier pivot before the range, so every
+            // item equal to it is in its final place: gather them and skip.
+            if(!leftmost && a[left - 1].compareTo(a[left]) >= 0){
+                left = partitionLeft(a, left, right) + 1;
+                continue;
+            }
+
+            int pivotPos = partitionRight(a, left, right);
+            boolean alreadyPartitioned = pivotPos < 0;
+            if(alreadyPartitioned){
+                pivotPos = ~pivotPos;
+            }
+            int leftSize = pivotPos - left;
+            int rightSize = right - pivotPos;
+
+            if(leftSize < size / 8 || rightSize < size / 8){
+                if(--badAllowed == 0){
+                    heapsort(a, left, right);
+                    return;
+                }
+                // Swap a few items to break up whatever pattern caused this
+                if(leftSize >= PDQ_INSERTION){
+                    swapReferences(a, left, left + leftSize / 4);
+                    swapReferences(a, pivotPos - 1, pivotPos - leftSize / 4);
+                }
+                if(rightSize >= PDQ_INSERTION){
+                    swapReferences(a, pivotPos + 1, pivotPos + 1 + rightSize / 4);
+                    swapReferences(a, right, right - rightSize / 4);
+                }
+            }else if(alreadyPartitioned && partialInsertionSort(a, left, pivotPos - 1)
+                    && partialInsertionSort(a, pivotPos + 1, right)){
+                return;     // The range was already (nearly) sorted
+            }
+
+            if(leftSize < rightSize){
+                pdqsort(a, left, pivotPos - 1, badAllowed, leftmost);
+                left = pivotPos + 1;
+                leftmost = false;
+            }else {
+                pdqsort(a, pivotPos + 1, right, badAllowed, false);
+                right = pivotPos - 1;
+            }
+        }
+    }
+
+    /**
+     * Partition around the pivot a[left]: items less than it go to its
+     * left, the rest to its right. The median-of-three pivot choice leaves
+     * an item no less than the pivot near right, which bounds the scans.
+     * @return the final position of the pivot, complemented (~pos) if
+     *         no items had to be swapped.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int partitionRight(AnyType[] a, int left, int right){
+        AnyType pivot = a[left];
+        int first = left;
+        int last = right + 1;
+        while (a[++first].compareTo(pivot) < 0){}
+        if(first - 1 == left){
+            while (first < last && a[--last].compareTo(pivot) >= 0){}
+        }else {
+            while (a[--last].compareTo(pivot) >= 0){}
+        }
+        boolean alreadyPartitioned = first >= last;
+        while (first < last){
+            swapReferences(a, first, last);
+            while (a[++first].compareTo(pivot) < 0){}
+            while (a[--last].compareTo(pivot) >= 0){}
+        }
+        int pivotPos = first - 1;
+        a[left] = a[pivotPos];
+        a[pivotPos] = pivot;
+        return alreadyPartitioned ? ~pivotPos : pivotPos;
+    }
+
+    /**
+     * Partition around the pivot a[left], putting items equal to it on
+     * its left. Used when no item of the range is less than the pivot.
+     * @return the final position of the pivot.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int partitionLeft(AnyType[] a, int left, int right){
+        AnyType pivot = a[left];
+        int first = left;
+        int last = right + 1;
+        while (pivot.compareTo(a[--last]) < 0){}
+        if(last == right){
+            while (first < last && pivot.compareTo(a[++first]) >= 0){}
+        }else {
+            while (pivot.compareTo(a[++first]) >= 0){}
+        }
+        while (first < last){
+            swapReferences(a, first, last);
+            while (pivot.compareTo(a[--last]) < 0){}
+            while (pivot.compareTo(a[++first]) >= 0){}
+        }
+        a[left] = a[last];
+        a[last] = pivot;
+        return last;
+    }
+
+    /**
+     * Insertion sort that gives up once more than PARTIAL_INSERTION_LIMIT
+     * items have been moved.
+     * @return true if the subarray is now sorted.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> boolean partialInsertionSort(AnyType[] a, int left, int right){
+        int moved = 0;
+        for(int p = left + 1; p <= right; p++){
+            AnyType tmp = a[p];
+            int j = p;
+            while (j > left && tmp.compareTo(a[j - 1]) < 0){
+                a[j] = a[j - 1];
+                j--;
+            }
+            a[j] = tmp;
+            moved += p - j;
+            if(moved > PARTIAL_INSERTION_LIMIT){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Order a[i], a[j] and a[k].
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void sort3(AnyType[] a, int i, int j, int k){
+        if(a[j].compareTo(a[i]) < 0){
+            swapReferences(a, i, j);
+        }
+        if(a[k].compareTo(a[j]) < 0){
+            swapReferences(a, j, k);
+            if(a[j].compareTo(a[i]) < 0){
+                swapReferences(a, i, j);
+            }
+        }
+    }
+
+    /**
+     * Simple insertion sort.
+     * @param a an array of ints.
+     */
+    public static void insertionSort(int[] a){
+        insertionSort(a, 0, a.length - 1);
+    }
+
+    private static void insertionSort(int[] a, int left, int right){
+        for(int p = left + 1; p <= right; p++){
+            int tmp = a[p];
+            int j;
+            for(j = p; j > left && tmp < a[j - 1]; j--){
+                a[j] = a[j - 1];
+            }
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Shellsort, using Shell's (poor) increments.
+     * @param a an array of ints.
+     */
+    public static void shellsort(int[] a){
+        int j;
+        for(int gap = a.length / 2; gap > 0; gap /= 2){
+            for(int i = gap; i < a.length; i++){
+                int tmp = a[i];
+                for(j = i; j >= gap && tmp < a[j - gap]; j -= gap){
+                    a[j] = a[j - gap];
+                }
+                a[j] = tmp;
+            }
+        }
+    }
+
+    private static void percDown(int[] a, int i, int n){
+        int child;
+        int tmp;
+        for(tmp = a[i]; leftChild(i) < n; i = child){
+            child = leftChild(i);
+            if(child != n - 1 && a[child] < a[child + 1]){
+                child++;
+            }
+            if(tmp < a[child]){
+                a[i] = a[child];
+            }else {
+                break;
+            }
+        }
+        a[i] = tmp;
+    }
+
+    /**
+     * Standard heapsort.
+     * @param a an array of ints.
+     */
+    public static void heapsort(int[] a){
+        for(int i = a.length / 2 - 1; i >= 0; i--){  /* buildHeap */
+            percDown(a, i, a.length);
+        }
+        for(int i = a.length - 1; i > 0; i--){    /* deleteMax */
+            swap(a, 0, i);
+            percDown(a, 0, i);
+        }
+    }
+
+    /**
+     * Mergesort algorithm.
+     * @param a an array of ints.
+     */
+    public static void mergeSort(int[] a){
+        int[] tmpArray = new int[a.length];
+        mergeSort(a, tmpArray, 0, a.length - 1);
+    }
+
+    private static void mergeSort(int[] a, int[] tmpArray, int left, int right){
+        if(left + CUTOFF <= right){
+            int center = (left + right) / 2;
+            mergeSort(a, tmpArray, left, center);
+            mergeSort(a, tmpArray, center + 1, right);
+            merge(a, tmpArray, left, center + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static void merge(int[] a, int[] tmpArray, int leftPos, int rightPos, int rightEnd){
+        int leftEnd = rightPos - 1;
+        int tmpPos = leftPos;
+        int numElements = rightEnd - leftPos + 1;
+
+        while (leftPos <= leftEnd && rightPos <= rightEnd){
+            if(a[leftPos] <= a[rightPos]){
+                tmpArray[tmpPos++] = a[leftPos++];
+            }else {
+                tmpArray[tmpPos++] = a[rightPos++];
+            }
+        }
+        while (leftPos <= leftEnd){
+            tmpArray[tmpPos++] = a[leftPos++];
+        }
+        while (rightPos <= rightEnd){
+            tmpArray[tmpPos++] = a[rightPos++];
+        }
+        tmpPos -= numElements;
+        System.arraycopy(tmpArray, tmpPos, a, tmpPos, numElements);
+    }
+
+    /**
+     * Quicksort algorithm.
+     * @param a an array of ints.
+     */
+    public static void quicksort(int[] a){
+        quicksort(a, 0, a.length - 1);
+    }
+
+    private static void quicksort(int[] a, int left, int right){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            quicksort(a, left, i - 1);
+            quicksort(a, i + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static int partition(int[] a, int left, int right){
+        int pivot = median3(a, left, right);
+        int i = left, j = right - 1;
+        for(;;){
+            while (a[++i] < pivot){}
+            while (pivot < a[--j]){}
+            if(i < j){
+                swap(a, i, j);
+            }else {
+                break;
+            }
+        }
+        swap(a, i, right - 1);  // Restore pivot
+        return i;
+    }
+
+    private static int median3(int[] a, int left, int right){
+        int center = (left + right) / 2;
+        if(a[center] < a[left]){
+            swap(a, left, center);
+        }
+        if(a[right] < a[left]){
+            swap(a, left, right);
+        }
+        if(a[right] < a[center]){
+            swap(a, center, right);
+        }
+        swap(a, center, right - 1);
+        return a[right - 1];
+    }
+
+    private static void swap(int[] a, int index1, int index2){
+        int tmp = a[index1];
+        a[index1] = a[index2];
+        a[index2] = tmp;
+    }
+
+    /**
+     * Quick selection algorithm.
+     * Places the kth smallest item in a[k-1].
+     * @param a an array of ints.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     */
+    public static void quickSelect(int[] a, int k){
+        quickSelect(a, 0, a.length - 1, k);
+    }
+
+    private static void quickSelect(int[] a, int left, int right, int k){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            if(k <= i){
+                quickSelect(a, left, i - 1, k);
+            }else if(k > i + 1){
+                quickSelect(a, i + 1, right, k);
+            }
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    /**
+     * Simple insertion sort.
+     * @param a an array of longs.
+     */
+    public static void insertionSort(long[] a){
+        insertionSort(a, 0, a.length - 1);
+    }
+
+    private static void insertionSort(long[] a, int left, int right){
+        for(int p = left + 1; p <= right; p++){
+            long tmp = a[p];
+            int j;
+            for(j = p; j > left && tmp < a[j - 1]; j--){
+                a[j] = a[j - 1];
+            }
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Shellsort, using Shell's (poor) increments.
+     * @param a an array of longs.
+     */
+    public static void shellsort(long[] a){
+        int j;
+        for(int gap = a.length / 2; gap > 0; gap /= 2){
+            for(int i = gap; i < a.length; i++){
+                long tmp = a[i];
+                for(j = i; j >= gap && tmp < a[j - gap]; j -= gap){
+                    a[j] = a[j - gap];
+                }
+                a[j] = tmp;
+            }
+        }
+    }
+
+    private static void percDown(long[] a, int i, int n){
+        int child;
+        long tmp;
+        for(tmp = a[i]; leftChild(i) < n; i = child){
+            child = leftChild(i);
+            if(child != n - 1 && a[child] < a[child + 1]){
+                child++;
+            }
+            if(tmp < a[child]){
+                a[i] = a[child];
+            }else {
+                break;
+            }
+        }
+        a[i] = tmp;
+    }
+
+    /**
+     * Standard heapsort.
+     * @param a an array of longs.
+     */
+    public static void heapsort(long[] a){
+        for(int i = a.length / 2 - 1; i >= 0; i--){  /* buildHeap */
+            percDown(a, i, a.length);
+        }
+        for(int i = a.length - 1; i > 0; i--){    /* deleteMax */
+            swap(a, 0, i);
+            percDown(a, 0, i);
+        }
+    }
+
+    /**
+     * Mergesort algorithm.
+     * @param a an array of longs.
+     */
+    public static void mergeSort(long[] a){
+        long[] tmpArray = new long[a.length];
+        mergeSort(a, tmpArray, 0, a.length - 1);
+    }
+
+    private static void mergeSort(long[] a, long[] tmpArray, int left, int right){
+        if(left + CUTOFF <= right){
+            int center = (left + right) / 2;
+            mergeSort(a, tmpArray, left, center);
+            mergeSort(a, tmpArray, center + 1, right);
+            merge(a, tmpArray, left, center + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static void merge(long[] a, long[] tmpArray, int leftPos, int rightPos, int rightEnd){
+        int leftEnd = rightPos - 1;
+        int tmpPos = leftPos;
+        int numElements = rightEnd - leftPos + 1;
+
+        while (leftPos <= leftEnd && rightPos <= rightEnd){
+            if(a[leftPos] <= a[rightPos]){
+                tmpArray[tmpPos++] = a[leftPos++];
+            }else {
+                tmpArray[tmpPos++] = a[rightPos++];
+            }
+        }
+        while (leftPos <= leftEnd){
+            tmpArray[tmpPos++] = a[leftPos++];
+        }
+        while (rightPos <= rightEnd){
+            tmpArray[tmpPos++] = a[rightPos++];
+        }
+        tmpPos -= numElements;
+        System.arraycopy(tmpArray, tmpPos, a, tmpPos, numElements);
+    }
+
+    /**
+     * Quicksort algorithm.
+     * @param a an array of longs.
+     */
+    public static void quicksort(long[] a){
+        quicksort(a, 0, a.length - 1);
+    }
+
+    private static void quicksort(long[] a, int left, int right){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            quicksort(a, left, i - 1);
+            quicksort(a, i + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static int partition(long[] a, int left, int right){
+        long pivot = median3(a, left, right);
+        int i = left, j = right - 1;
+        for(;;){
+            while (a[++i] < pivot){}
+            while (pivot < a[--j]){}
+            if(i < j){
+                swap(a, i, j);
+            }else {
+                break;
+            }
+        }
+        swap(a, i, right - 1);  // Restore pivot
+        return i;
+    }
+
+    private static long median3(long[] a, int left, int right){
+        int center = (left + right) / 2;
+        if(a[center] < a[left]){
+            swap(a, left, center);
+        }
+        if(a[right] < a[left]){
+            swap(a, left, right);
+        }
+        if(a[right] < a[center]){
+            swap(a, center, right);
+        }
+        swap(a, center, right - 1);
+        return a[right - 1];
+    }
+
+    private static void swap(long[] a, int index1, int index2){
+        long tmp = a[index1];
+        a[index1] = a[index2];
+        a[index2] = tmp;
+    }
+
+    /**
+     * Quick selection algorithm.
+     * Places the kth smallest item in a[k-1].
+     * @param a an array of longs.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     */
+    public static void quickSelect(long[] a, int k){
+        quickSelect(a, 0, a.length - 1, k);
+    }
+
+    private static void quickSelect(long[] a, int left, int right, int k){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            if(k <= i){
+                quickSelect(a, left, i - 1, k);
+            }else if(k > i + 1){
+                quickSelect(a, i + 1, right, k);
+            }
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    /**
+     * Simple insertion sort.
+     * @param a an array of doubles; NaN values are moved to the end.
+     */
+    public static void insertionSort(double[] a){
+        insertionSort(a, 0, moveNaNsToEnd(a) - 1);
+    }
+
+    private static void insertionSort(double[] a, int left, int right){
+        for(int p = left + 1; p <= right; p++){
+            double tmp = a[p];
+            int j;
+            for(j = p; j > left && tmp < a[j - 1]; j--){
+                a[j] = a[j - 1];
+            }
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Shellsort, using Shell's (poor) increments.
+     * @param a an array of doubles; NaN values are moved to the end.
+     */
+    public static void shellsort(double[] a){
+        int n = moveNaNsToEnd(a);
+        int j;
+        for(int gap = n / 2; gap > 0; gap /= 2){
+            for(int i = gap; i < n; i++){
+                double tmp = a[i];
+                for(j = i; j >= gap && tmp < a[j - gap]; j -= gap){
+                    a[j] = a[j - gap];
+                }
+                a[j] = tmp;
+            }
+        }
+    }
+
+    private static void percDown(double[] a, int i, int n){
+        int child;
+        double tmp;
+        for(tmp = a[i]; leftChild(i) < n; i = child){
+            child = leftChild(i);
+            if(child != n - 1 && a[child] < a[child + 1]){
+                child++;
+            }
+            if(tmp < a[child]){
+                a[i] = a[child];
+            }else {
+                break;
+            }
+        }
+        a[i] = tmp;
+    }
+
+    /**
+     * Standard heapsort.
+     * @param a an array of doubles; NaN values are moved to the end.
+     */
+    public static void heapsort(double[] a){
+        int n = moveNaNsToEnd(a);
+        for(int i = n / 2 - 1; i >= 0; i--){  /* buildHeap */
+            percDown(a, i, n);
+        }
+        for(int i = n - 1; i > 0; i--){    /* deleteMax */
+            swap(a, 0, i);
+            percDown(a, 0, i);
+        }
+    }
+
+    /**
+     * Mergesort algorithm.
+     * @param a an array of doubles; NaN values are moved to the end.
+     */
+    public static void mergeSort(double[] a){
+        double[] tmpArray = new double[a.length];
+        mergeSort(a, tmpArray, 0, moveNaNsToEnd(a) - 1);
+    }
+
+    private static void mergeSort(double[] a, double[] tmpArray, int left, int right){
+        if(left + CUTOFF <= right){
+            int center = (left + right) / 2;
+            mergeSort(a, tmpArray, left, center);
+            mergeSort(a, tmpArray, center + 1, right);
+            merge(a, tmpArray, left, center + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static void merge(double[] a, double[] tmpArray, int leftPos, int rightPos, int rightEnd){
+        int leftEnd = rightPos - 1;
+        int tmpPos = leftPos;
+        int numElements = rightEnd - leftPos + 1;
+
+        while (leftPos <= leftEnd && rightPos <= rightEnd){
+            if(a[leftPos] <= a[rightPos]){
+                tmpArray[tmpPos++] = a[leftPos++];
+            }else {
+                tmpArray[tmpPos++] = a[rightPos++];
+            }
+        }
+        while (leftPos <= leftEnd){
+            tmpArray[tmpPos++] = a[leftPos++];
+        }
+        while (rightPos <= rightEnd){
+            tmpArray[tmpPos++] = a[rightPos++];
+        }
+        tmpPos -= numElements;
+        System.arraycopy(tmpArray, tmpPos, a, tmpPos, numElements);
+    }
+
+    /**
+     * Quicksort algorithm.
+     * @param a an array of doubles; NaN values are moved to the end.
+     */
+    public static void quicksort(double[] a){
+        quicksort(a, 0, moveNaNsToEnd(a) - 1);
+    }
+
+    private static void quicksort(double[] a, int left, int right){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            quicksort(a, left, i - 1);
+            quicksort(a, i + 1, right);
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    private static int partition(double[] a, int left, int right){
+        double pivot = median3(a, left, right);
+        int i = left, j = right - 1;
+        for(;;){
+            while (a[++i] < pivot){}
+            while (pivot < a[--j]){}
+            if(i < j){
+                swap(a, i, j);
+            }else {
+                break;
+            }
+        }
+        swap(a, i, right - 1);  // Restore pivot
+        return i;
+    }
+
+    private static double median3(double[] a, int left, int right){
+        int center = (left + right) / 2;
+        if(a[center] < a[left]){
+            swap(a, left, center);
+        }
+        if(a[right] < a[left]){
+            swap(a, left, right);
+        }
+        if(a[right] < a[center]){
+            swap(a, center, right);
+        }
+        swap(a, center, right - 1);
+        return a[right - 1];
+    }
+
+    /**
+     * Move every NaN to the end of a, where Arrays.sort puts them. The
+     * routines above compare with <, which is not a total order once a NaN
+     * is present, so they only ever see the rest.
+     * @return the number of values that are not NaN, now in a[0..n-1].
+     */
+    private static int moveNaNsToEnd(double[] a){
+        int n = a.length;
+        for(int i = 0; i < n; ){
+            if(Double.isNaN(a[i])){
+                swap(a, i, --n);
+            }else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static void swap(double[] a, int index1, int index2){
+        double tmp = a[index1];
+        a[index1] = a[index2];
+        a[index2] = tmp;
+    }
+
+    /**
+     * Quick selection algorithm.
+     * Places the kth smallest item in a[k-1].
+     * @param a an array of doubles; NaN values are moved to the end.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     */
+    public static void quickSelect(double[] a, int k){
+        int n = moveNaNsToEnd(a);
+        if(k <= n){     // Otherwise a[k-1] is already one of the NaNs
+            quickSelect(a, 0, n - 1, k);
+        }
+    }
+
+    private static void quickSelect(double[] a, int left, int right, int k){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right);
+            if(k <= i){
+                quickSelect(a, left, i - 1, k);
+            }else if(k > i + 1){
+                quickSelect(a, i + 1, right, k);
+            }
+        }else {
+            insertionSort(a, left, right);
+        }
+    }
+
+    /**
+     * Simple insertion sort.
+     * @param a an array of items.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void insertionSort(AnyType[] a, Comparator<? super AnyType> c){
+        insertionSort(a, 0, a.length - 1, c);
+    }
+
+    private static <AnyType> void insertionSort(AnyType[] a, int left, int right, Comparator<? super AnyType> c){
+        for(int p = left + 1; p <= right; p++){
+            AnyType tmp = a[p];
+            int j;
+            for(j = p; j > left && c.compare(tmp, a[j - 1]) < 0; j--){
+                a[j] = a[j - 1];
+            }
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Shellsort, using Shell's (poor) increments.
+     * @param a an array of items.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void shellsort(AnyType[] a, Comparator<? super AnyType> c){
+        int j;
+        for(int gap = a.length / 2; gap > 0; gap /= 2){
+            for(int i = gap; i < a.length; i++){
+                AnyType tmp = a[i];
+                for(j = i; j >= gap && c.compare(tmp, a[j - gap]) < 0; j -= gap){
+                    a[j] = a[j - gap];
+                }
+                a[j] = tmp;
+            }
+        }
+    }
+
+    private static <AnyType> void percDown(AnyType[] a, int i, int n, Comparator<? super AnyType> c){
+        int child;
+        AnyType tmp;
+        for(tmp = a[i]; leftChild(i) < n; i = child){
+            child = leftChild(i);
+            if(child != n - 1 && c.compare(a[child], a[child + 1]) < 0){
+                child++;
+            }
+            if(c.compare(tmp, a[child]) < 0){
+                a[i] = a[child];
+            }else {
+                break;
+            }
+        }
+        a[i] = tmp;
+    }
+
+    /**
+     * Standard heapsort.
+     * @param a an array of items.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void heapsort(AnyType[] a, Comparator<? super AnyType> c){
+        for(int i = a.length / 2 - 1; i >= 0; i--){  /* buildHeap */
+            percDown(a, i, a.length, c);
+        }
+        for(int i = a.length - 1; i > 0; i--){    /* deleteMax */
+            swapReferences(a, 0, i);
+            percDown(a, 0, i, c);
+        }
+    }
+
+    /**
+     * Mergesort algorithm.
+     * @param a an array of items.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void mergeSort(AnyType[] a, Comparator<? super AnyType> c){
+        AnyType[] tmpArray = (AnyType[]) new Object[a.length];
+        mergeSort(a, tmpArray, 0, a.length - 1, c);
+    }
+
+    private static <AnyType> void mergeSort(AnyType[] a, AnyType[] tmpArray, int left, int right, Comparator<? super AnyType> c){
+        if(left + CUTOFF <= right){
+            int center = (left + right) / 2;
+            mergeSort(a, tmpArray, left, center, c);
+            mergeSort(a, tmpArray, center + 1, right, c);
+            merge(a, tmpArray, left, center + 1, right, c);
+        }else {
+            insertionSort(a, left, right, c);
+        }
+    }
+
+    private static <AnyType> void merge(AnyType[] a, AnyType[] tmpArray, int leftPos, int rightPos, int rightEnd, Comparator<? super AnyType> c){
+        int leftEnd = rightPos - 1;
+        int tmpPos = leftPos;
+        int numElements = rightEnd - leftPos + 1;
+
+        while (leftPos <= leftEnd && rightPos <= rightEnd){
+            if(c.compare(a[leftPos], a[rightPos]) <= 0){
+                tmpArray[tmpPos++] = a[leftPos++];
+            }else {
+                tmpArray[tmpPos++] = a[rightPos++];
+            }
+        }
+        while (leftPos <= leftEnd){
+            tmpArray[tmpPos++] = a[leftPos++];
+        }
+        while (rightPos <= rightEnd){
+            tmpArray[tmpPos++] = a[rightPos++];
+        }
+        tmpPos -= numElements;
+        System.arraycopy(tmpArray, tmpPos, a, tmpPos, numElements);
+    }
+
+    /**
+     * Quicksort algorithm.
+     * @param a an array of items.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void quicksort(AnyType[] a, Comparator<? super AnyType> c){
+        quicksort(a, 0, a.length - 1, c);
+    }
+
+    private static <AnyType> void quicksort(AnyType[] a, int left, int right, Comparator<? super AnyType> c){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right, c);
+            quicksort(a, left, i - 1, c);
+            quicksort(a, i + 1, right, c);
+        }else {
+            insertionSort(a, left, right, c);
+        }
+    }
+
+    private static <AnyType> int partition(AnyType[] a, int left, int right, Comparator<? super AnyType> c){
+        AnyType pivot = median3(a, left, right, c);
+        int i = left, j = right - 1;
+        for(;;){
+            while (c.compare(a[++i], pivot) < 0){}
+            while (c.compare(pivot, a[--j]) < 0){}
+            if(i < j){
+                swapReferences(a, i, j);
+            }else {
+                break;
+            }
+        }
+        swapReferences(a, i, right - 1);  // Restore pivot
+        return i;
+    }
+
+    private static <AnyType> AnyType median3(AnyType[] a, int left, int right, Comparator<? super AnyType> c){
+        int center = (left + right) / 2;
+        if(c.compare(a[center], a[left]) < 0){
+            swapReferences(a, left, center);
+        }
+        if(c.compare(a[right], a[left]) < 0){
+            swapReferences(a, left, right);
+        }
+        if(c.compare(a[right], a[center]) < 0){
+            swapReferences(a, center, right);
+        }
+        swapReferences(a, center, right - 1);
+        return a[right - 1];
+    }
+
+    /**
+     * Quick selection algorithm.
+     * Places the kth smallest item in a[k-1].
+     * @param a an array of items.
+     * @param k the desired rank (1 is minimum) in the entire array.
+     * @param c the ordering of the items.
+     */
+    public static <AnyType> void quickSelect(AnyType[] a, int k, Comparator<? super AnyType> c){
+        quickSelect(a, 0, a.length - 1, k, c);
+    }
+
+    private static <AnyType> void quickSelect(AnyType[] a, int left, int right, int k, Comparator<? super AnyType> c){
+        if(left + CUTOFF <= right){
+            int i = partition(a, left, right, c);
+            if(k <= i){
+                quickSelect(a, left, i - 1, k, c);
+            }else if(k > i + 1){
+                quickSelect(a, i + 1, right, k, c);
+            }
+        }else {
+            insertionSort(a, left, right, c);
+        }
+    }
+
+    /**
+     * Default size below which the parallel sorts stop forking.
+     */
+    public static final int PARALLEL_GRANULARITY = 1 << 13;
+
+    /**
+     * Parallel mergesort, run on the common ForkJoinPool.
+     * @param a an array of Comparable items.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void parallelMergeSort(AnyType[] a){
+        parallelMergeSort(a, PARALLEL_GRANULARITY);
+    }
+
+    /**
+     * Parallel mergesort, run on the common ForkJoinPool.
+     * The two halves of a range are sorted in parallel, then merged in
+     * parallel; every task shares the one tmpArray.
+     * @param a an array of Comparable items.
+     * @param granularity ranges of at most this many items are sorted
+     *        (and merged) sequentially.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void parallelMergeSort(AnyType[] a, int granularity){
+        AnyType[] tmpArray = (AnyType[]) new Comparable[a.length];
+        ForkJoinPool.commonPool().invoke(
+                new MergeSortTask<>(a, tmpArray, 0, a.length - 1, Math.max(granularity, CUTOFF)));
+    }
+
+    /**
+     * Parallel quicksort, run on the common ForkJoinPool.
+     * @param a an array of Comparable items.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void parallelQuicksort(AnyType[] a){
+        parallelQuicksort(a, PARALLEL_GRANULARITY);
+    }
+
+    /**
+     * Parallel quicksort, run on the common ForkJoinPool.
+     * Each range is partitioned as in quicksort and the two sides
+     * are sorted in parallel.
+     * @param a an array of Comparable items.
+     * @param granularity ranges of at most this many items are sorted sequentially.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> void parallelQuicksort(AnyType[] a, int granularity){
+        ForkJoinPool.commonPool().invoke(
+                new QuicksortTask<>(a, 0, a.length - 1, Math.max(granularity, CUTOFF)));
+    }
+
+    private static class MergeSortTask<AnyType extends Comparable<? super AnyType>> extends RecursiveAction {
+        private final AnyType[] a;
+        private final AnyType[] tmpArray;
+        private final int left;
+        private final int right;
+        private final int granularity;
+
+        MergeSortTask(AnyType[] a, AnyType[] tmpArray, int left, int right, int granularity){
+            this.a = a;
+            this.tmpArray = tmpArray;
+            this.left = left;
+            this.right = right;
+            this.granularity = granularity;
+        }
+
+        protected void compute(){
+            if(right - left < granularity){
+                mergeSort(a, tmpArray, left, right);
+                return;
+            }
+            int center = (left + right) / 2;
+            invokeAll(new MergeSortTask<>(a, tmpArray, left, center, granularity),
+                    new MergeSortTask<>(a, tmpArray, center + 1, right, granularity));
+            if(a[center].compareTo(a[center + 1]) <= 0){
+                return;     // Already in order
+            }
+            new MergeTask<>(a, tmpArray, left, center, center + 1, right, left, granularity).invoke();
+            System.arraycopy(tmpArray, left, a, left, right - left + 1);
+        }
+    }
+
+    /**
+     * Merges the sorted runs a[lo1..hi1] and a[lo2..hi2] into tmpArray
+     * from tmpPos. Large merges are split in two: the middle item of the
+     * longer run is located in the shorter one by binary search, and each
+     * side is merged by its own task.
+     */
+    private static class MergeTask<AnyType extends Comparable<? super AnyType>> extends RecursiveAction {
+        private final AnyType[] a;
+        private final AnyType[] tmpArray;
+        private final int lo1, hi1, lo2, hi2;
+        private final int tmpPos;
+        private final int granularity;
+
+        MergeTask(AnyType[] a, AnyType[] tmpArray, int lo1, int hi1, int lo2, int hi2, int tmpPos, int granularity){
+            this.a = a;
+            this.tmpArray = tmpArray;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.tmpPos = tmpPos;
+            this.granularity = granularity;
+        }
+
+        protected void compute(){
+            int n1 = hi1 - lo1 + 1;
+            int n2 = hi2 - lo2 + 1;
+            if(n1 + n2 <= granularity){
+                mergeRuns(a, tmpArray, lo1, hi1, lo2, hi2, tmpPos);
+                return;
+            }
+            // Items equal to the split key go after it when they come from
+            // the second run and before it when they come from the first,
+            // which keeps the merge stable. The split key is never the first
+            // item of the larger run, so each side gets part of it and both
+            // tasks are strictly smaller than this one.
+            int mid1, mid2;
+            if(n1 >= n2){
+                mid1 = lo1 + n1 / 2;
+                mid2 = lowerBound(a, lo2, hi2 + 1, a[mid1]);
+            }else {
+                mid2 = lo2 + n2 / 2;
+                mid1 = upperBound(a, lo1, hi1 + 1, a[mid2]);
+            }
+            int split = tmpPos + (mid1 - lo1) + (mid2 - lo2);
+            if(split == tmpPos || split == tmpPos + n1 + n2){
+                mergeRuns(a, tmpArray, lo1, hi1, lo2, hi2, tmpPos);
+                return;
+            }
+            invokeAll(new MergeTask<>(a, tmpArray, lo1, mid1 - 1, lo2, mid2 - 1, tmpPos, granularity),
+                    new MergeTask<>(a, tmpArray, mid1, hi1, mid2, hi2, split, granularity));
+        }
+    }
+
+    private static class QuicksortTask<AnyType extends Comparable<? super AnyType>> extends RecursiveAction {
+        private final AnyType[] a;
+        private final int left;
+        private final int right;
+        private final int granularity;
+
+        QuicksortTask(AnyType[] a, int left, int right, int granularity){
+            this.a = a;
+            this.left = left;
+            this.right = right;
+            this.granularity = granularity;
+        }
+
+        protected void compute(){
+            if(right - left < granularity){
+                quicksort(a, left, right);
+                return;
+            }
+            int i = partition(a, left, right);
+            invokeAll(new QuicksortTask<>(a, left, i - 1, granularity),
+                    new QuicksortTask<>(a, i + 1, right, granularity));
+        }
+    }
+
+    /**
+     * Merge the sorted runs a[lo1..hi1] and a[lo2..hi2] into tmpArray
+     * starting at tmpPos, without copying back. Either run may be empty.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> void mergeRuns(AnyType[] a, AnyType[] tmpArray,
+            int lo1, int hi1, int lo2, int hi2, int tmpPos){
+        while (lo1 <= hi1 && lo2 <= hi2){
+            if(a[lo1].compareTo(a[lo2]) <= 0){
+                tmpArray[tmpPos++] = a[lo1++];
+            }else {
+                tmpArray[tmpPos++] = a[lo2++];
+            }
+        }
+        while (lo1 <= hi1){
+            tmpArray[tmpPos++] = a[lo1++];
+        }
+        while (lo2 <= hi2){
+            tmpArray[tmpPos++] = a[lo2++];
+        }
+    }
+
+    /**
+     * @return the first index in [from, to) whose item is not less than key, or to.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int lowerBound(AnyType[] a, int from, int to, AnyType key){
+        while (from < to){
+            int mid = (from + to) >>> 1;
+            if(a[mid].compareTo(key) < 0){
+                from = mid + 1;
+            }else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @return the first index in [from, to) whose item is greater than key, or to.
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int upperBound(AnyType[] a, int from, int to, AnyType key){
+        while (from < to){
+            int mid = (from + to) >>> 1;
+            if(a[mid].compareTo(key) <= 0){
+                from = mid + 1;
+            }else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    private static final int NUM_ITEMS = 1000;
+    private static int theSeed = 1;
+
+    private static void checkSort(Integer[] a){
+        for(int i = 0; i < a.length; i++){
+            if(a[i] != i){
+                System.out.println("Error at " + i);
+            }
+        }
+        System.out.println("Finished checksort");
+    }
+
+    public static void main(String[] args) {
+        Integer[] a = new Integer[NUM_ITEMS];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+        }
+        for(theSeed = 0; theSeed < 20; theSeed++){
+            Random.permute(a);
+            Sort.insertionSort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.heapsort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.shellsort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.mergeSort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.quicksort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.pdqsort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.adaptiveMergeSort(a);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.parallelMergeSort(a, 16);
+            checkSort(a);
+
+            Random.permute(a);
+            Sort.parallelQuicksort(a, 16);
+            checkSort(a);
+
+            // A two-item run against a run it all precedes must still split
+            Integer[] small = { 1, 5, 2, 3 };
+            Sort.parallelMergeSort(small, 3);
+            if(small[0] != 1 || small[1] != 2 || small[2] != 3 || small[3] != 5){
+                System.out.println("Error at parallelMergeSort of 4 items");
+            }
+
+            Random.permute(a);
+            Sort.quickSelect(a, NUM_ITEMS / 2);
+            System.out.println(a[NUM_ITEMS / 2 - 1] + " " + NUM_ITEMS / 2);
+
+            Random.permute(a);
+            Sort.introSelect(a, NUM_ITEMS / 10);
+            Sort.floydRivestSelect(a, NUM_ITEMS / 2);
+            Sort.multiSelect(a, new int[]{ 1, NUM_ITEMS / 10, NUM_ITEMS });
+            if(a[0] != 0 || a[NUM_ITEMS / 10 - 1] != NUM_ITEMS / 10 - 1 || a[NUM_ITEMS - 1] != NUM_ITEMS - 1){
+                System.out.println("Selection fails");
+            }
+        }
+
+        // Primitive and Comparator overloads; the Comparator sorts descending
+        Comparator<Integer> descending = Comparator.reverseOrder();
+        for(int routine = 0; routine < 6; routine++){
+            Random.permute(a);
+            int[] ia = new int[a.length];
+            long[] la = new long[a.length];
+            double[] da = new double[a.length];
+            Integer[] ca = a.clone();
+            for(int i = 0; i < a.length; i++){
+                ia[i] = a[i];
+                la[i] = a[i];
+                da[i] = a[i];
+            }
+            switch (routine){
+                case 0: insertionSort(ia); insertionSort(la); insertionSort(da); insertionSort(ca, descending); break;
+                case 1: shellsort(ia); shellsort(la); shellsort(da); shellsort(ca, descending); break;
+                case 2: heapsort(ia); heapsort(la); heapsort(da); heapsort(ca, descending); break;
+                case 3: mergeSort(ia); mergeSort(la); mergeSort(da); mergeSort(ca, descending); break;
+                case 4: quicksort(ia); quicksort(la); quicksort(da); quicksort(ca, descending); break;
+                default:
+                    quickSelect(ia, NUM_ITEMS / 2);
+                    quickSelect(la, NUM_ITEMS / 2);
+                    quickSelect(da, NUM_ITEMS / 2);
+                    quickSelect(ca, NUM_ITEMS / 2, descending);
+            }
+            for(int i = 0; i < a.length; i++){
+                if(routine == 5 && i != NUM_ITEMS / 2 - 1){
+                    continue;
+                }
+                if(ia[i] != i || la[i] != i || da[i] != i || ca[i] != NUM_ITEMS - 1 - i){
+                    System.out.println("Error at " + i + " in overload " + routine);
+                }
+            }
+        }
+
+        // Every tenth double a NaN: the rest must still come out in order
+        for(int routine = 0; routine < 6; routine++){
+            Random.permute(a);
+            double[] da = new double[a.length];
+            for(int i = 0; i < a.length; i++){
+                da[i] = a[i] % 10 == 0 ? Double.NaN : a[i];
+            }
+            switch (routine){
+                case 0: insertionSort(da); break;
+                case 1: shellsort(da); break;
+                case 2: heapsort(da); break;
+                case 3: mergeSort(da); break;
+                case 4: quicksort(da); break;
+                default: quickSelect(da, NUM_ITEMS / 2);
+            }
+            int numbers = NUM_ITEMS - (NUM_ITEMS + 9) / 10;
+            for(int i = 0; i < a.length; i++){
+                if(routine == 5 && i != NUM_ITEMS / 2 - 1 && i != numbers){
+                    continue;
+                }
+                double expected = i < numbers ? i + i / 9 + 1 : Double.NaN;
+                if(Double.compare(da[i], expected) != 0){
+                    System.out.println("Error at " + i + " in NaN overload " + routine);
+                }
+            }
+        }
+
+        Integer[] b = new Integer[10_000_000];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = i;
+        }
+        Random.permute(b);
+        long start = System.currentTimeMillis();
+        Sort.quickSelect(b, b.length / 2);
+        long end = System.currentTimeMillis();
+        System.out.println("Timing for Section 1.1 example: ");
+        System.out.println("Selection for N = " + b.length + " takes " + (end - start) + "ms.");
+        System.out.println(b[b.length / 2 - 1] + " " + b.length / 2);
+
+        // p50, p90, p99 and p999 of the same array
+        int[] percentiles = { b.length / 2, b.length / 10 * 9, b.length / 100 * 99, b.length / 1000 * 999 };
+        String[] selectors = { "quickSelect", "introSelect", "floydRivestSelect", "multiSelect" };
+        for(int round = 0; round < 3; round++){
+            for(int selector = 0; selector < selectors.length; selector++){
+                Random.permute(b);
+                int[] found = new int[percentiles.length];
+                start = System.currentTimeMillis();
+                if(selector == 3){
+                    Sort.multiSelect(b, percentiles);
+                    for(int p = 0; p < percentiles.length; p++){
+                        found[p] = b[percentiles[p] - 1];
+                    }
+                }else {
+                    // A later selection may move an earlier answer, so each is read at once
+                    for(int p = 0; p < percentiles.length; p++){
+                        if(selector == 0){
+                            Sort.quickSelect(b, percentiles[p]);
+                        }else if(selector == 1){
+                            Sort.introSelect(b, percentiles[p]);
+                        }else {
+                            Sort.floydRivestSelect(b, percentiles[p]);
+                        }
+                        found[p] = b[percentiles[p] - 1];
+                    }
+                }
+                end = System.currentTimeMillis();
+                for(int p = 0; p < percentiles.length; p++){
+                    if(found[p] != percentiles[p] - 1){
+                        System.out.println("Error at " + (percentiles[p] - 1));
+                    }
+                }
+                System.out.println(selectors[selector] + ", 4 percentiles of N = " + b.length + ": " + (end - start) + "ms");
+            }
+        }
+
+        // Boxed against primitive
+        int[] c = new int[b.length];
+        for(int round = 0; round < 3; round++){
+            timeSort("quicksort(Integer[])", b, () -> Sort.quicksort(b));
+            Random.permute(b);
+            for(int i = 0; i < b.length; i++){
+                c[i] = b[i];
+            }
+            start = System.currentTimeMillis();
+            Sort.quicksort(c);
+            end = System.currentTimeMillis();
+            for(int i = 0; i < c.length; i++){
+                if(c[i] != i){
+                    System.out.println("Error at " + i);
+                    break;
+                }
+            }
+            System.out.println("quicksort(int[]): " + (end - start) + "ms");
+        }
+
+        // pdqsort on inputs that defeat or flatter a plain quicksort
+        String[] shapes = { "random", "sorted", "reversed", "organ pipe", "16 distinct keys" };
+        Integer[] d = new Integer[2_000_000];
+        for(int shape = 0; shape < shapes.length; shape++){
+            long[] times = new long[3];
+            for(int round = 0; round < 3; round++){
+                for(int routine = 0; routine < times.length; routine++){
+                    for(int i = 0; i < d.length; i++){
+                        switch (shape){
+                            case 0: d[i] = i; break;
+                            case 1: d[i] = i; break;
+                            case 2: d[i] = d.length - i; break;
+                            case 3: d[i] = Math.min(i, d.length - i); break;
+                            default: d[i] = i % 16;
+                        }
+                    }
+                    if(shape == 0 || shape == 4){
+                        Random.permute(d);
+                    }
+                    start = System.currentTimeMillis();
+                    if(routine == 0){
+                        Sort.quicksort(d);
+                    }else if(routine == 1){
+                        Sort.pdqsort(d);
+                    }else {
+                        Arrays.sort(d);
+                    }
+                    times[routine] += System.currentTimeMillis() - start;
+                    for(int i = 1; i < d.length; i++){
+                        if(d[i - 1] > d[i]){
+                            System.out.println("Error at " + i);
+                            break;
+                        }
+                    }
+                }
+            }
+            System.out.println(shapes[shape] + ", N = " + d.length + ": quicksort " + times[0] / 3
+                    + "ms, pdqsort " + times[1] / 3 + "ms, Arrays.sort " + times[2] / 3 + "ms");
+        }
+
+        // Natural-run mergesort on mostly ordered input
+        String[] orders = { "random", "sorted", "1% swapped", "1% appended at random", "reversed" };
+        Random rand = new Random(1);
+        for(int order = 0; order < orders.length; order++){
+            long[] times = new long[3];
+            for(int round = 0; round < 3; round++){
+                for(int routine = 0; routine < times.length; routine++){
+                    for(int i = 0; i < d.length; i++){
+                        d[i] = order == 4 ? d.length - i : i;
+                    }
+                    if(order == 0){
+                        Random.permute(d);
+                    }else if(order == 2){
+                        for(int i = 0; i < d.length / 100; i++){
+                            swapReferences(d, rand.randomInt(0, d.length - 1), rand.randomInt(0, d.length - 1));
+                        }
+                    }else if(order == 3){
+                        for(int i = d.length - d.length / 100; i < d.length; i++){
+                            d[i] = rand.randomInt(0, d.length - 1);
+                        }
+                    }
+                    start = System.currentTimeMillis();
+                    if(routine == 0){
+                        Sort.mergeSort(d);
+                    }else if(routine == 1){
+                        Sort.adaptiveMergeSort(d);
+                    }else {
+                        Arrays.sort(d);
+                    }
+                    times[routine] += System.currentTimeMillis() - start;
+                    for(int i = 1; i < d.length; i++){
+                        if(d[i - 1] > d[i]){
+                            System.out.println("Error at " + i);
+                            break;
+                        }
+                    }
+                }
+            }
+            System.out.println(orders[order] + ", N = " + d.length + ": mergeSort " + times[0] / 3
+                    + "ms, adaptiveMergeSort " + times[1] / 3 + "ms, Arrays.sort " + times[2] / 3 + "ms");
+        }
+
+        // Sequential and fork-join sorts against Arrays.parallelSort
+        System.out.println("Sorting N = " + b.length + ", parallelism " + ForkJoinPool.getCommonPoolParallelism());
+        for(int round = 0; round < 3; round++){
+            timeSort("mergeSort", b, () -> Sort.mergeSort(b));
+            timeSort("parallelMergeSort", b, () -> Sort.parallelMergeSort(b));
+            timeSort("parallelMergeSort, granularity 1024", b, () -> Sort.parallelMergeSort(b, 1 << 10));
+            timeSort("parallelMergeSort, granularity 65536", b, () -> Sort.parallelMergeSort(b, 1 << 16));
+            timeSort("quicksort", b, () -> Sort.quicksort(b));
+            timeSort("parallelQuicksort", b, () -> Sort.parallelQuicksort(b));
+            timeSort("Arrays.parallelSort", b, () -> Arrays.parallelSort(b));
+        }
+    }
+
+    private static void timeSort(String name, Integer[] b, Runnable sort){
+        Random.permute(b);
+        long start = System.currentTimeMillis();
+        sort.run();
+        long end = System.currentTimeMillis();
+        for(int i = 0; i < b.length; i++){
+            if(b[i] != i){
+                System.out.println("Error at " + i);
+                break;
+            }
+        }
+        System.out.println(name + ": " + (end - start) + "ms");
     }
 }
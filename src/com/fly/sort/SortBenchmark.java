@@ -0,0 +1,453 @@
+package com.fly.sort;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark harness for the routines in Sort and RadixSort.
+ * Every routine is run on every input distribution at every size. Each
+ * cell gets warmup runs, then timed samples on fresh copies of one input,
+ * and reports the median and best time per sort, the throughput, the bytes
+ * allocated per sort and the collections that ran while it was measured.
+ * Every result is checked against Arrays.sort.
+ *
+ * Usage: SortBenchmark [-sizes 1000,100000] [-routines quicksort,pdqsort]
+ *                      [-dists random,zipf] [-samples 5]
+ * Routine and distribution names match by prefix, case ignored.
+ * Only the input types of the selected routines are built, one at a time.
+ * A cell holds the generated and sorted ints plus three arrays of the
+ * routine's type (expected, source and work): about 20 bytes an item for
+ * int[], 32 for long[] and double[], and upwards of 60 for Integer[],
+ * String and byte[][], whose items are separate objects.
+ */
+public class SortBenchmark {
+
+    private static final int SEED = 20170603;
+    private static final long MIN_SAMPLE_NANOS = 20_000_000;   // Small inputs are sorted repeatedly per sample
+    private static final int QUADRATIC_LIMIT = 20_000;         // Larger inputs skip the quadratic routines
+    private static final int STRING_LEN = 8;                   // Keys as fixed-width hex for the String sorts
+    private static final long LONG_SCALE = 0x9E3779B1L;         // Spreads long keys over every byte
+
+    /**
+     * How an input is generated; every value is in [0, n).
+     */
+    public enum Distribution {
+        RANDOM {
+            void fill(int[] a, Random r){
+                for(int i = 0; i < a.length; i++){
+                    a[i] = r.randomInt(0, a.length - 1);
+                }
+            }
+        },
+        SORTED {
+            void fill(int[] a, Random r){
+                for(int i = 0; i < a.length; i++){
+                    a[i] = i;
+                }
+            }
+        },
+        REVERSED {
+            void fill(int[] a, Random r){
+                for(int i = 0; i < a.length; i++){
+                    a[i] = a.length - 1 - i;
+                }
+            }
+        },
+        FEW_UNIQUE {
+            void fill(int[] a, Random r){
+                for(int i = 0; i < a.length; i++){
+                    a[i] = r.randomInt(0, 15);
+                }
+            }
+        },
+        ZIPF {
+            // Rank r is drawn with probability about 1 / (r + 1), by inverting
+            // the continuous cumulative distribution ln(x + 1) / ln(n + 1)
+            void fill(int[] a, Random r){
+                double logRange = Math.log(a.length + 1.0);
+                for(int i = 0; i < a.length; i++){
+                    a[i] = Math.min(a.length - 1, (int) Math.exp(r.random0_1() * logRange) - 1);
+                }
+            }
+        },
+        SAWTOOTH {
+            // 16 ascending runs of random values, as when sorted batches are appended
+            void fill(int[] a, Random r){
+                RANDOM.fill(a, r);
+                int tooth = Math.max(1, a.length / 16);
+                for(int from = 0; from < a.length; from += tooth){
+                    Arrays.sort(a, from, Math.min(a.length, from + tooth));
+                }
+            }
+        };
+
+        abstract void fill(int[] a, Random r);
+
+        /**
+         * @return n values drawn from this distribution with a fixed seed.
+         */
+        public int[] generate(int n){
+            int[] a = new int[n];
+            fill(a, new Random(SEED + n));
+            return a;
+        }
+    }
+
+    /**
+     * The array types the routines take. Every conversion from the int
+     * values keeps their order, so the sorted ints convert to the expected
+     * result. The payload inputs are a pair { keys, payloads }, with each
+     * payload derived from its key so the check can see that they moved
+     * together.
+     */
+    private enum Input {
+        INT, LONG, FLOAT, DOUBLE, BOXED, STRING, BYTES, INT_PAYLOAD(true), LONG_PAYLOAD(true);
+
+        final boolean paired;
+
+        Input(){
+            this(false);
+        }
+
+        Input(boolean paired){
+            this.paired = paired;
+        }
+    }
+
+    private static final class Routine {
+        final String name;
+        final Input input;
+        final boolean quadratic;
+        final boolean select;       // Only a[middle(n) - 1] is checked
+        final Consumer<Object> run;
+
+        Routine(String name, Input input, boolean quadratic, boolean select, Consumer<Object> run){
+            this.name = name;
+            this.input = input;
+            this.quadratic = quadratic;
+            this.select = select;
+            this.run = run;
+        }
+    }
+
+    private static List<Routine> routines(){
+        List<Routine> r = new ArrayList<>();
+        Comparator<Integer> natural = Comparator.naturalOrder();
+        r.add(new Routine("insertionSort(int[])", Input.INT, true, false, a -> Sort.insertionSort((int[]) a)));
+        r.add(new Routine("shellsort(int[])", Input.INT, false, false, a -> Sort.shellsort((int[]) a)));
+        r.add(new Routine("heapsort(int[])", Input.INT, false, false, a -> Sort.heapsort((int[]) a)));
+        r.add(new Routine("mergeSort(int[])", Input.INT, false, false, a -> Sort.mergeSort((int[]) a)));
+        r.add(new Routine("quicksort(int[])", Input.INT, false, false, a -> Sort.quicksort((int[]) a)));
+        r.add(new Routine("quickSelect(int[])", Input.INT, false, true, a -> Sort.quickSelect((int[]) a, middle(((int[]) a).length))));
+        r.add(new Routine("insertionSort(long[])", Input.LONG, true, false, a -> Sort.insertionSort((long[]) a)));
+        r.add(new Routine("shellsort(long[])", Input.LONG, false, false, a -> Sort.shellsort((long[]) a)));
+        r.add(new Routine("heapsort(long[])", Input.LONG, false, false, a -> Sort.heapsort((long[]) a)));
+        r.add(new Routine("mergeSort(long[])", Input.LONG, false, false, a -> Sort.mergeSort((long[]) a)));
+        r.add(new Routine("quicksort(long[])", Input.LONG, false, false, a -> Sort.quicksort((long[]) a)));
+        r.add(new Routine("quickSelect(long[])", Input.LONG, false, true, a -> Sort.quickSelect((long[]) a, middle(((long[]) a).length))));
+        r.add(new Routine("insertionSort(double[])", Input.DOUBLE, true, false, a -> Sort.insertionSort((double[]) a)));
+        r.add(new Routine("shellsort(double[])", Input.DOUBLE, false, false, a -> Sort.shellsort((double[]) a)));
+        r.add(new Routine("heapsort(double[])", Input.DOUBLE, false, false, a -> Sort.heapsort((double[]) a)));
+        r.add(new Routine("mergeSort(double[])", Input.DOUBLE, false, false, a -> Sort.mergeSort((double[]) a)));
+        r.add(new Routine("quicksort(double[])", Input.DOUBLE, false, false, a -> Sort.quicksort((double[]) a)));
+        r.add(new Routine("quickSelect(double[])", Input.DOUBLE, false, true, a -> Sort.quickSelect((double[]) a, middle(((double[]) a).length))));
+        r.add(new Routine("insertionSort", Input.BOXED, true, false, a -> Sort.insertionSort((Integer[]) a)));
+        r.add(new Routine("shellsort", Input.BOXED, false, false, a -> Sort.shellsort((Integer[]) a)));
+        r.add(new Routine("heapsort", Input.BOXED, false, false, a -> Sort.heapsort((Integer[]) a)));
+        r.add(new Routine("mergeSort", Input.BOXED, false, false, a -> Sort.mergeSort((Integer[]) a)));
+        r.add(new Routine("quicksort", Input.BOXED, false, false, a -> Sort.quicksort((Integer[]) a)));
+        r.add(new Routine("pdqsort", Input.BOXED, false, false, a -> Sort.pdqsort((Integer[]) a)));
+        r.add(new Routine("adaptiveMergeSort", Input.BOXED, false, false, a -> Sort.adaptiveMergeSort((Integer[]) a)));
+        r.add(new Routine("parallelMergeSort", Input.BOXED, false, false, a -> Sort.parallelMergeSort((Integer[]) a)));
+        r.add(new Routine("parallelQuicksort", Input.BOXED, false, false, a -> Sort.parallelQuicksort((Integer[]) a)));
+        r.add(new Routine("quickSelect", Input.BOXED, false, true, a -> Sort.quickSelect((Integer[]) a, middle(((Integer[]) a).length))));
+        r.add(new Routine("introSelect", Input.BOXED, false, true, a -> Sort.introSelect((Integer[]) a, middle(((Integer[]) a).length))));
+        r.add(new Routine("floydRivestSelect", Input.BOXED, false, true, a -> Sort.floydRivestSelect((Integer[]) a, middle(((Integer[]) a).length))));
+        r.add(new Routine("multiSelect", Input.BOXED, false, true, a -> Sort.multiSelect((Integer[]) a, new int[]{ middle(((Integer[]) a).length) })));
+        r.add(new Routine("insertionSort(Comparator)", Input.BOXED, true, false, a -> Sort.insertionSort((Integer[]) a, natural)));
+        r.add(new Routine("shellsort(Comparator)", Input.BOXED, false, false, a -> Sort.shellsort((Integer[]) a, natural)));
+        r.add(new Routine("heapsort(Comparator)", Input.BOXED, false, false, a -> Sort.heapsort((Integer[]) a, natural)));
+        r.add(new Routine("mergeSort(Comparator)", Input.BOXED, false, false, a -> Sort.mergeSort((Integer[]) a, natural)));
+        r.add(new Routine("quicksort(Comparator)", Input.BOXED, false, false, a -> Sort.quicksort((Integer[]) a, natural)));
+        r.add(new Routine("quickSelect(Comparator)", Input.BOXED, false, true, a -> Sort.quickSelect((Integer[]) a, middle(((Integer[]) a).length), natural)));
+        r.add(new Routine("lsdRadixSort(int[])", Input.INT, false, false, a -> RadixSort.lsdRadixSort((int[]) a)));
+        r.add(new Routine("lsdRadixSort(long[])", Input.LONG, false, false, a -> RadixSort.lsdRadixSort((long[]) a)));
+        r.add(new Routine("lsdRadixSort(float[])", Input.FLOAT, false, false, a -> RadixSort.lsdRadixSort((float[]) a)));
+        r.add(new Routine("lsdRadixSort(double[])", Input.DOUBLE, false, false, a -> RadixSort.lsdRadixSort((double[]) a)));
+        r.add(new Routine("lsdRadixSort(int[], int[])", Input.INT_PAYLOAD, false, false,
+                a -> RadixSort.lsdRadixSort((int[]) ((Object[]) a)[0], (int[]) ((Object[]) a)[1])));
+        r.add(new Routine("lsdRadixSort(long[], int[])", Input.LONG_PAYLOAD, false, false,
+                a -> RadixSort.lsdRadixSort((long[]) ((Object[]) a)[0], (int[]) ((Object[]) a)[1])));
+        r.add(new Routine("parallelLsdRadixSort(int[])", Input.INT, false, false, a -> RadixSort.parallelLsdRadixSort((int[]) a)));
+        r.add(new Routine("parallelLsdRadixSort(long[])", Input.LONG, false, false, a -> RadixSort.parallelLsdRadixSort((long[]) a)));
+        r.add(new Routine("radixSortA", Input.STRING, false, false, a -> RadixSort.radixSortA((String[]) a, STRING_LEN)));
+        r.add(new Routine("countingRadixSort", Input.STRING, false, false, a -> RadixSort.countingRadixSort((String[]) a, STRING_LEN)));
+        r.add(new Routine("parallelCountingRadixSort", Input.STRING, false, false, a -> RadixSort.parallelCountingRadixSort((String[]) a, STRING_LEN)));
+        r.add(new Routine("radixSort", Input.STRING, false, false, a -> RadixSort.radixSort((String[]) a, STRING_LEN)));
+        r.add(new Routine("msdRadixSort", Input.STRING, false, false, a -> RadixSort.msdRadixSort((String[]) a)));
+        r.add(new Routine("msdRadixSort(byte[][])", Input.BYTES, false, false, a -> RadixSort.msdRadixSort((byte[][]) a)));
+        r.add(new Routine("multikeyQuicksort", Input.STRING, false, false, a -> RadixSort.multikeyQuicksort((String[]) a)));
+        return r;
+    }
+
+    /**
+     * @return the rank the selection routines look for in n items, at least 1.
+     */
+    private static int middle(int n){
+        return Math.max(1, n / 2);
+    }
+
+    /**
+     * Convert an input to the array type a routine takes.
+     */
+    private static Object convert(int[] a, Input input){
+        int n = a.length;
+        switch (input){
+            case INT:
+                return a.clone();
+            case LONG:
+                long[] longs = new long[n];
+                for(int i = 0; i < n; i++){
+                    longs[i] = (a[i] - n / 2) * LONG_SCALE;
+                }
+                return longs;
+            case FLOAT:
+                float[] floats = new float[n];
+                for(int i = 0; i < n; i++){
+                    floats[i] = (float) ((a[i] - n / 2) / 7.0);
+                }
+                return floats;
+            case DOUBLE:
+                double[] doubles = new double[n];
+                for(int i = 0; i < n; i++){
+                    doubles[i] = (a[i] - n / 2) / 7.0;
+                }
+                return doubles;
+            case BOXED:
+                Integer[] boxed = new Integer[n];
+                for(int i = 0; i < n; i++){
+                    boxed[i] = a[i];
+                }
+                return boxed;
+            case STRING:
+                String[] strings = new String[n];
+                for(int i = 0; i < n; i++){
+                    strings[i] = String.format("%08x", a[i]);
+                }
+                return strings;
+            case BYTES:
+                byte[][] bytes = new byte[n][];
+                for(int i = 0; i < n; i++){
+                    bytes[i] = String.format("%08x", a[i]).getBytes(StandardCharsets.US_ASCII);
+                }
+                return bytes;
+            default:
+                int[] payloads = new int[n];
+                for(int i = 0; i < n; i++){
+                    payloads[i] = ~a[i];
+                }
+                return new Object[]{ convert(a, input == Input.INT_PAYLOAD ? Input.INT : Input.LONG), payloads };
+        }
+    }
+
+    /**
+     * Copy a fresh input over the array a routine has just sorted.
+     */
+    private static void copy(Object source, Object work, Input input, int n){
+        if(input.paired){
+            for(int j = 0; j < 2; j++){
+                System.arraycopy(((Object[]) source)[j], 0, ((Object[]) work)[j], 0, n);
+            }
+        }else {
+            // byte[][] rows are only moved, never written, so they can be shared
+            System.arraycopy(source, 0, work, 0, n);
+        }
+    }
+
+    /**
+     * @return whether work, sorted by the routine, agrees with expected at every
+     *         checked position. A selection is checked at its rank only.
+     */
+    private static boolean check(Object work, Object expected, boolean select){
+        if(select){
+            int n = Array.getLength(work);
+            if(n < 2){
+                return true;
+            }
+            int k = middle(n) - 1;
+            return Array.get(work, k).equals(Array.get(expected, k));
+        }
+        if(work instanceof int[]){
+            return Arrays.equals((int[]) work, (int[]) expected);
+        }
+        if(work instanceof long[]){
+            return Arrays.equals((long[]) work, (long[]) expected);
+        }
+        if(work instanceof float[]){
+            return Arrays.equals((float[]) work, (float[]) expected);
+        }
+        if(work instanceof double[]){
+            return Arrays.equals((double[]) work, (double[]) expected);
+        }
+        return Arrays.deepEquals((Object[]) work, (Object[]) expected);
+    }
+
+    /**
+     * Bytes allocated so far by every live thread, pool workers included,
+     * or -1 if the JVM cannot tell.
+     */
+    private static long allocatedBytes(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean)){
+            return -1;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for(long bytes: bean.getThreadAllocatedBytes(bean.getAllThreadIds())){
+            if(bytes > 0){
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static long[] gcCountAndTime(){
+        long[] result = new long[2];
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+            result[0] += Math.max(0, gc.getCollectionCount());
+            result[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+
+    /**
+     * Measure one routine on one input.
+     * @return false if any run gave a wrong result.
+     */
+    private static boolean measure(Routine routine, String dist, int[] data, Object expected, int samples){
+        Object source = convert(data, routine.input);
+        Object work = convert(data, routine.input);
+        int n = data.length;
+        // Runs per sample, so that small inputs are not timed one fast call at a time
+        copy(source, work, routine.input, n);
+        long once = System.nanoTime();
+        routine.run.accept(work);
+        once = System.nanoTime() - once;
+        boolean ok = check(work, expected, routine.select);
+        int reps = (int) Math.max(1, Math.min(100_000, MIN_SAMPLE_NANOS / Math.max(1, once)));
+
+        for(int warmup = 0; warmup < 2; warmup++){
+            for(int rep = 0; rep < reps; rep++){
+                copy(source, work, routine.input, n);
+                routine.run.accept(work);
+            }
+        }
+
+        double[] perSort = new double[samples];
+        // What reading the counters allocates itself, taken off every sample
+        long overhead = -allocatedBytes();
+        overhead += allocatedBytes();
+        long[] gcBefore = gcCountAndTime();
+        long allocated = 0;
+        for(int s = 0; s < samples; s++){
+            long nanos = 0;
+            // The copies allocate nothing, so the whole sample is counted at once
+            long bytes = allocatedBytes();
+            for(int rep = 0; rep < reps; rep++){
+                copy(source, work, routine.input, n);
+                long start = System.nanoTime();
+                routine.run.accept(work);
+                nanos += System.nanoTime() - start;
+            }
+            allocated += Math.max(0, allocatedBytes() - bytes - overhead);
+            perSort[s] = (double) nanos / reps;
+            ok &= check(work, expected, routine.select);
+        }
+        long[] gcAfter = gcCountAndTime();
+        Arrays.sort(perSort);
+        double median = perSort[samples / 2];
+        System.out.println(String.format("%-28s %-10s %10d %12.3f %12.3f %10.2f %14d %6d %8d",
+                routine.name, dist, n, median / 1e6, perSort[0] / 1e6, n / median * 1e3,
+                allocated / ((long) samples * reps), gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]));
+        if(!ok){
+            System.out.println("OOPS!!! " + routine.name + " on " + dist + ", N = " + n);
+        }
+        return ok;
+    }
+
+    private static boolean matches(String[] prefixes, String name){
+        if(prefixes == null){
+            return true;
+        }
+        for(String p: prefixes){
+            if(name.toLowerCase().startsWith(p.toLowerCase())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = { 1_000, 100_000, 1_000_000 };
+        String[] routineNames = null;
+        String[] distNames = null;
+        int samples = 5;
+        for(int i = 0; i + 1 < args.length; i += 2){
+            String[] values = args[i + 1].split(",");
+            switch (args[i]){
+                case "-sizes":
+                    sizes = new int[values.length];
+                    for(int j = 0; j < values.length; j++){
+                        sizes[j] = Integer.parseInt(values[j].replace("_", ""));
+                    }
+                    break;
+                case "-routines":
+                    routineNames = values;
+                    break;
+                case "-dists":
+                    distNames = values;
+                    break;
+                case "-samples":
+                    samples = Integer.parseInt(values[0]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.println(String.format("%-28s %-10s %10s %12s %12s %10s %14s %6s %8s",
+                "routine", "input", "N", "median ms", "best ms", "M items/s", "bytes/op", "GCs", "GC ms"));
+        List<Routine> all = routines();
+        for(int n: sizes){
+            for(Distribution dist: Distribution.values()){
+                if(!matches(distNames, dist.name())){
+                    continue;
+                }
+                int[] data = dist.generate(n);
+                int[] sorted = data.clone();
+                Arrays.sort(sorted);
+                for(Input input: Input.values()){
+                    Object expected = null;     // Built for the first routine that needs it
+                    for(Routine routine: all){
+                        if(routine.input != input || !matches(routineNames, routine.name)
+                                || (routine.quadratic && n > QUADRATIC_LIMIT)){
+                            continue;
+                        }
+                        if(expected == null){
+                            expected = convert(sorted, input);
+                        }
+                        measure(routine, dist.name().toLowerCase(), data, expected, samples);
+                    }
+                }
+            }
+        }
+    }
+}